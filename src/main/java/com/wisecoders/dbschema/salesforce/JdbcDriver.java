@@ -32,7 +32,7 @@ public class JdbcDriver implements Driver {
 
     static {
         try {
-            final File logsFile = new File("~/.DbSchema/logs/");
+            final File logsFile = new File( System.getProperty("user.home"), ".DbSchema/logs/");
             if ( !logsFile.exists()) {
                 logsFile.mkdirs();
             }
@@ -1,21 +1,45 @@
 package com.wisecoders.dbschema.salesforce;
 
 import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.wisecoders.dbschema.salesforce.io.ArrayResultSet;
+import com.wisecoders.dbschema.salesforce.io.CacheState;
+import com.wisecoders.dbschema.salesforce.io.SoqlRowSource;
 import com.wisecoders.dbschema.salesforce.io.TransferReader;
+import com.wisecoders.dbschema.salesforce.schema.Column;
 import com.wisecoders.dbschema.salesforce.schema.Schema;
 import com.wisecoders.dbschema.salesforce.schema.ShowTables;
 import com.wisecoders.dbschema.salesforce.schema.Table;
+import com.wisecoders.dbschema.salesforce.sql.Condition;
+import com.wisecoders.dbschema.salesforce.sql.SelectStatement;
+import com.wisecoders.dbschema.salesforce.sql.SoqlQuery;
+import com.wisecoders.dbschema.salesforce.sql.SqlParser;
 import org.h2.jdbc.JdbcConnection;
 
 import java.io.File;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 
@@ -39,42 +63,193 @@ public class SalesforceConnection implements Connection {
 
     private static final String INTERNAL_H2_LOCATION = "~/.DbSchema/jdbc-salesforce-cache/";
     private static final Pattern CLEAN_CACHES = Pattern.compile( "(\\s*)clean(\\s+)caches(\\s+)", Pattern.CASE_INSENSITIVE );
+    private static final Pattern REFRESH_CACHES = Pattern.compile( "(\\s*)refresh(\\s+)caches(\\s+)", Pattern.CASE_INSENSITIVE );
     private static final Pattern CACHE_ALL = Pattern.compile( "(\\s*)cache(\\s+)all(\\s+)", Pattern.CASE_INSENSITIVE );
+    private static final Pattern SELECT_ALL_COLUMNS = Pattern.compile( "(select|,)\\s*(distinct\\s+)?([\\w\"]+\\.)?\\*", Pattern.CASE_INSENSITIVE );
+    private static final Pattern NON_WORD_CHARS = Pattern.compile( "\\W+" );
+    private static final Pattern DIRECT_HINT = Pattern.compile( "/\\*\\+\\s*direct\\s*\\*/", Pattern.CASE_INSENSITIVE );
     private static final Pattern RELOAD_SCHEMA = Pattern.compile( "(\\s*)reload(\\s+)schema(\\s+)", Pattern.CASE_INSENSITIVE );
+    private static final Pattern SHOW_CACHES = Pattern.compile( "(\\s*)show(\\s+)caches(\\s*)", Pattern.CASE_INSENSITIVE );
+    // BACKGROUND REFRESH OF STALE TABLES, SHARED BY ALL CONNECTIONS. DAEMON THREADS DO NOT KEEP THE APPLICATION RUNNING.
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newCachedThreadPool( runnable -> {
+        final Thread thread = new Thread( runnable, "salesforce-cache-refresh" );
+        thread.setDaemon( true );
+        return thread;
+    });
 
     private final String databaseName;
+    private final String h2JdbcUrl;
+    private final boolean memoryCache;
     public final JdbcConnection h2Connection;
     public final PartnerConnection partnerConnection;
     private final TransferReader reader;
-    private static final HashMap<String, Schema> schemes = new HashMap<>();
+    private final Set<PreparedStatementProxy> openPreparedStatements = ConcurrentHashMap.newKeySet();
+    private final Map<String,String> parameters = new HashMap<>();
+    // SHARED BY THE CONNECTIONS TO THE SAME DATABASE, WHICH MAY BE OPENED AND USED FROM MANY THREADS
+    private static final Map<String, Schema> schemes = new ConcurrentHashMap<>();
+    private static final Map<String, Object> h2DdlLocks = new ConcurrentHashMap<>();
+    // DATABASES WHOSE SAVED CACHE STATE WAS RESTORED INTO THE SCHEMA TABLES
+    private static final Set<String> restoredCaches = new HashSet<>();
+    // OPEN CONNECTIONS TO EACH IN-MEMORY DATABASE. THE LAST ONE CLOSED SHUTS THE DATABASE DOWN.
+    private static final Map<String, Integer> memoryConnections = new HashMap<>();
 
 
     SalesforceConnection(String databaseName, PartnerConnection partnerConnection, Map<String,String> parameters ) throws SQLException {
-        this.databaseName = databaseName;
         this.partnerConnection = partnerConnection;
-        final String h2DatabasePath = getH2DatabasePath(databaseName);
-        final String h2JdbcUrl = "jdbc:h2:" + h2DatabasePath + ";database_to_upper=false";
-        LOGGER.log(Level.INFO, "Create H2 database '" + h2JdbcUrl + "'");
-        this.h2Connection = (JdbcConnection)(new org.h2.Driver().connect( h2JdbcUrl, new Properties() ));
-
-        ShowTables showTables = ShowTables.all;
-        if ( parameters.containsKey("tables") && "custom".equalsIgnoreCase(parameters.get("tables"))){
-            showTables = ShowTables.custom;
+        for ( Map.Entry<String,String> entry : parameters.entrySet() ){
+            this.parameters.put( entry.getKey().toLowerCase(), entry.getValue() );
         }
-        if ( !schemes.containsKey(databaseName)) {
-            schemes.put(databaseName, new Schema( showTables ));
+        final String cacheMode = getParameter("cache", "file");
+        this.memoryCache = "memory".equalsIgnoreCase( cacheMode );
+        if ( memoryCache ){
+            // THE DATABASE IS KEPT WHILE CONNECTIONS TO IT ARE OPEN, AND SHUT DOWN WHEN THE LAST ONE IS CLOSED
+            this.databaseName = databaseName + "_memory";
+            this.h2JdbcUrl = "jdbc:h2:mem:" + this.databaseName + ";database_to_upper=false;DB_CLOSE_DELAY=-1";
+        } else if ( "temp".equalsIgnoreCase( cacheMode )){
+            this.databaseName = databaseName + "_temp";
+            this.h2JdbcUrl = "jdbc:h2:" + getTempH2DatabasePath( this.databaseName ) + ";database_to_upper=false";
+        } else {
+            this.databaseName = databaseName;
+            this.h2JdbcUrl = "jdbc:h2:" + getH2DatabasePath(databaseName) + ";database_to_upper=false";
         }
+        LOGGER.log(Level.INFO, "Create H2 database '" + h2JdbcUrl + "'");
+        if ( memoryCache ){
+            synchronized ( memoryConnections ){
+                this.h2Connection = openH2Session();
+                memoryConnections.merge( this.databaseName, 1, Integer::sum );
+            }
+        } else {
+            this.h2Connection = openH2Session();
+        }
+        CacheState.createStateTable( this, h2Connection );
+
+        final ShowTables showTables = parameters.containsKey("tables") && "custom".equalsIgnoreCase(parameters.get("tables")) ? ShowTables.custom : ShowTables.all;
+        final int describeThreads = getIntParameter("describethreads", 4 );
+        schemes.computeIfAbsent( this.databaseName, name -> new Schema( showTables, describeThreads ));
         this.reader = new TransferReader( this );
     }
 
     private String getH2DatabasePath(String path ){
-        final File h2File = new File(INTERNAL_H2_LOCATION);
+        // H2 RESOLVES ~ TO THE USER HOME, java.io.File DOES NOT
+        final File h2File = new File( System.getProperty("user.home"), INTERNAL_H2_LOCATION.substring( 2 ));
         if ( !h2File.exists()) {
             h2File.mkdirs();
         }
         return INTERNAL_H2_LOCATION + path;
     }
 
+    /**
+     * With cache=temp the H2 database is stored in the temporary directory and deleted when the application exits.
+     */
+    private static String getTempH2DatabasePath( String name ){
+        final File directory = new File( System.getProperty("java.io.tmpdir"), "jdbc-salesforce-cache-" + ProcessHandle.current().pid() );
+        if ( !directory.exists() && directory.mkdirs() ){
+            directory.deleteOnExit();
+        }
+        // DELETED IN REVERSE ORDER OF REGISTRATION, SO BEFORE THE DIRECTORY
+        new File( directory, name + ".mv.db" ).deleteOnExit();
+        new File( directory, name + ".trace.db" ).deleteOnExit();
+        return new File( directory, name ).getAbsolutePath();
+    }
+
+
+    /**
+     * Lock shared by all sessions using the same H2 database, used to run DDL statements one at a time.
+     */
+    public Object getH2DdlLock(){
+        return h2DdlLocks.computeIfAbsent( databaseName, name -> new Object() );
+    }
+
+    /**
+     * Open an additional session to the H2 cache database, used to load tables in parallel.
+     */
+    public JdbcConnection openH2Session() throws SQLException {
+        return (JdbcConnection)(new org.h2.Driver().connect( h2JdbcUrl, new Properties() ));
+    }
+
+    /**
+     * Open an additional Salesforce connection using the same session, used to load tables in parallel.
+     */
+    public PartnerConnection openPartnerConnection() throws SQLException {
+        final ConnectorConfig sourceConfig = partnerConnection.getConfig();
+        final ConnectorConfig config = new ConnectorConfig();
+        config.setAuthEndpoint( sourceConfig.getAuthEndpoint() );
+        config.setServiceEndpoint( sourceConfig.getServiceEndpoint() );
+        config.setSessionId( sourceConfig.getSessionId() );
+        config.setUsername( sourceConfig.getUsername() );
+        config.setPassword( sourceConfig.getPassword() );
+        config.setCompression( sourceConfig.isCompression() );
+        config.setConnectionTimeout( sourceConfig.getConnectionTimeout() );
+        config.setReadTimeout( sourceConfig.getReadTimeout() );
+        if ( sourceConfig.getProxy() != null ) {
+            config.setProxy( sourceConfig.getProxy() );
+            config.setProxyUsername( sourceConfig.getProxyUsername() );
+            config.setProxyPassword( sourceConfig.getProxyPassword() );
+        }
+        try {
+            return new PartnerConnection( config );
+        } catch ( ConnectionException ex ){
+            throw new SQLException( ex );
+        }
+    }
+
+    /**
+     * Connection parameters are given in the JDBC URL or in the connection properties. Names are case-insensitive.
+     */
+    public String getParameter( String name, String defaultValue ){
+        final String value = parameters.get( name.toLowerCase() );
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+
+    public int getIntParameter( String name, int defaultValue ){
+        final String value = getParameter( name, null );
+        try {
+            return value != null ? Integer.parseInt( value.trim() ) : defaultValue;
+        } catch ( NumberFormatException ex ){
+            LOGGER.log(Level.WARNING, "Parameter " + name + "=" + value + " is not a number. Use default " + defaultValue );
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Check if a table is listed in a comma-separated table list parameter. The value '*' matches all tables.
+     */
+    public boolean isTableInParameter( String name, Table table ){
+        final String value = getParameter( name, null );
+        if ( value != null ) {
+            for (String tableName : value.split(",")) {
+                tableName = tableName.trim();
+                if ( "*".equals(tableName) || tableName.equalsIgnoreCase(table.name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read a number from a parameter given as a number for all tables, or as a comma-separated list of Table:number,
+     * where '*:number' applies to the tables not listed. Returns the default value if the table is not set.
+     */
+    public int getTableIntParameter( String name, Table table, int defaultValue ){
+        final String value = getParameter( name, null );
+        int result = defaultValue;
+        if ( value != null ) {
+            for ( String entry : value.split(",") ){
+                final int separator = entry.lastIndexOf(':');
+                final String tableName = separator > -1 ? entry.substring( 0, separator ).trim() : "*";
+                if ( "*".equals( tableName ) || tableName.equalsIgnoreCase( table.name )){
+                    try {
+                        result = Integer.parseInt( entry.substring( separator + 1 ).trim() );
+                    } catch ( NumberFormatException ex ){
+                        LOGGER.log(Level.WARNING, "Parameter " + name + "=" + value + " is not a number. Use default " + defaultValue );
+                    }
+                    if ( !"*".equals( tableName )) break;
+                }
+            }
+        }
+        return result;
+    }
 
     public Schema getSchemaDef(){
         return schemes.get(databaseName);
@@ -90,17 +265,472 @@ public class SalesforceConnection implements Connection {
 
     public void ensureColumnsAreLoaded() throws SQLException {
         getSchemaDef().ensureColumnsAreLoaded( partnerConnection );
+        restoreCacheState();
+    }
+
+    /**
+     * The data loaded by earlier connections, also before a restart, is in the H2 database. Once the schema columns are known,
+     * mark these tables as loaded, using the state saved in the H2 database.
+     */
+    private void restoreCacheState(){
+        synchronized ( restoredCaches ){
+            if ( restoredCaches.add( databaseName )){
+                try {
+                    final int restored = CacheState.restore( h2Connection, getSchemaDef() );
+                    if ( restored > 0 ){
+                        LOGGER.info("Use " + restored + " tables cached by earlier connections");
+                    }
+                } catch ( SQLException ex ){
+                    LOGGER.log(Level.WARNING, "Cannot read the saved cache state, the tables will be loaded again", ex );
+                }
+            }
+        }
     }
 
     private void transferDataForTablesFromQuery( String query ) throws SQLException{
         if ( query != null && !query.isEmpty()){
             ensureTablesAreLoaded();
-            for ( Table table : getSchemaDef().tables ){
-                if (!table.isLoaded() && table.findNamePattern.matcher(query).find() ){
-                    reader.transferData( table );
-                    table.setLoaded( true );
+            revalidateTables( query );
+            try {
+                transferDataForTables( query );
+            } finally {
+                evictTables( query );
+            }
+        }
+    }
+
+    private void transferDataForTables( String query ) throws SQLException{
+        if ( transferDataForFilteredTable( query ) || transferDataForSemiJoin( query )){
+            return;
+        }
+        final Map<Table,List<Column>> tablesToLoad = new LinkedHashMap<>();
+        for ( Table table : getSchemaDef().getTables() ){
+            if ( table.findNamePattern.matcher(query).find() ){
+                ensureColumnsAreLoaded();
+                final List<Column> columns = getColumnsUsedInQuery( table, query );
+                if ( !table.isFullyLoaded() || !table.getMissingColumns( columns ).isEmpty() ) {
+                    tablesToLoad.put( table, columns );
+                }
+            }
+        }
+        final int loadThreads = Math.min( tablesToLoad.size(), getIntParameter("loadthreads", 4 ));
+        if ( loadThreads > 1 ){
+            transferDataInParallel( tablesToLoad, loadThreads );
+        } else {
+            for ( Map.Entry<Table,List<Column>> entry : tablesToLoad.entrySet() ){
+                reader.transferData( entry.getKey(), entry.getValue() );
+            }
+        }
+    }
+
+    /**
+     * Mark the tables named in the statement as in use until the statement is done, so they are not evicted meanwhile.
+     */
+    private List<Table> acquireTables( String query ) throws SQLException {
+        final List<Table> usedTables = new ArrayList<>();
+        if ( !query.isEmpty() ){
+            ensureTablesAreLoaded();
+            for ( Table table : getSchemaDef().getTables() ){
+                if ( table.findNamePattern.matcher( query ).find() ){
+                    table.acquire();
+                    usedTables.add( table );
+                }
+            }
+        }
+        return usedTables;
+    }
+
+    /**
+     * With cachesize=MB or cacherows=rows, if the cached tables exceed the budget, the least recently used tables are dropped from the cache,
+     * or with eviction=lfu the least frequently used ones. Tables used by running statements or by the given query, and tables being
+     * loaded or refreshed, are kept.
+     */
+    private void evictTables( String query ){
+        final long maxBytes = getIntParameter("cachesize", 0 ) * 1024L * 1024L, maxRows = getIntParameter("cacherows", 0 );
+        if ( maxBytes <= 0 && maxRows <= 0 ){
+            return;
+        }
+        synchronized ( getSchemaDef() ){
+            long bytes = 0, rows = 0;
+            final List<Table> cachedTables = new ArrayList<>();
+            for ( Table table : getSchemaDef().getTables() ){
+                if ( table.isLoaded() ){
+                    if ( maxBytes > 0 && table.getCachedBytes() < 0 ){
+                        // NOT MEASURED WHEN THE TABLE WAS SAVED, FOR EXAMPLE BY A CONNECTION WITHOUT CACHESIZE
+                        measureDiskSpace( table );
+                    }
+                    bytes += Math.max( 0, table.getCachedBytes() );
+                    rows += table.getCachedRows();
+                    cachedTables.add( table );
+                }
+            }
+            if ( ( maxBytes <= 0 || bytes <= maxBytes ) && ( maxRows <= 0 || rows <= maxRows )){
+                return;
+            }
+            final boolean lfu = "lfu".equalsIgnoreCase( getParameter("eviction", "lru"));
+            cachedTables.sort( lfu ? Comparator.comparingLong( Table::getAccessCount ).thenComparingLong( Table::getLastAccessTime )
+                    : Comparator.comparingLong( Table::getLastAccessTime ));
+            for ( Table table : cachedTables ){
+                if ( ( maxBytes <= 0 || bytes <= maxBytes ) && ( maxRows <= 0 || rows <= maxRows )){
+                    break;
+                }
+                if ( query != null && table.findNamePattern.matcher( query ).find() || table.isRefreshing() || !table.loadLock.tryLock() ){
+                    continue;
+                }
+                try {
+                    final long tableBytes = Math.max( 0, table.getCachedBytes() ), tableRows = table.getCachedRows();
+                    if ( table.evict() ){
+                        synchronized ( getH2DdlLock() ){
+                            try ( Statement st = h2Connection.createStatement() ){
+                                st.execute("drop table if exists \"" + table.name + "\"");
+                            }
+                        }
+                        CacheState.save( h2Connection, table, false );
+                        bytes -= tableBytes;
+                        rows -= tableRows;
+                        LOGGER.info("Evicted '" + table + "' from the cache, " + tableRows + " rows, " + tableBytes / 1024 + " KB");
+                    }
+                } catch ( SQLException ex ){
+                    LOGGER.log(Level.WARNING, "Error evicting '" + table + "' from the cache", ex );
+                } finally {
+                    table.loadLock.unlock();
+                }
+            }
+        }
+    }
+
+    private void measureDiskSpace( Table table ){
+        try {
+            table.setCacheSize( table.getCachedRows(), CacheState.getDiskSpaceUsed( h2Connection, table ));
+        } catch ( SQLException ex ){
+            LOGGER.log(Level.WARNING, "Cannot measure the disk space of '" + table + "'", ex );
+        }
+    }
+
+    /**
+     * With ttl=seconds, a query on a cached table older than its ttl is answered from the cache, while the table is refreshed
+     * in the background. With maxage=seconds, a query on a table older than its max age waits for the refresh.
+     * Both parameters can be set per table, like ttl=Account:3600,*:600. At most one refresh runs for a table.
+     */
+    private void revalidateTables( String query ){
+        if ( getParameter("ttl", null ) == null && getParameter("maxage", null ) == null ){
+            return;
+        }
+        for ( Table table : getSchemaDef().getTables() ){
+            final long ageMillis = table.getAgeMillis();
+            if ( ageMillis < 0 || !table.findNamePattern.matcher( query ).find() ){
+                continue;
+            }
+            final int maxAge = getTableIntParameter("maxage", table, 0 ), ttl = getTableIntParameter("ttl", table, 0 );
+            if ( maxAge > 0 && ageMillis > maxAge * 1000L ){
+                LOGGER.info("Table '" + table + "' is older than " + maxAge + " sec, wait for the refresh");
+                try {
+                    table.submitRefresh( REFRESH_EXECUTOR, () -> refreshTable( table ) ).get();
+                } catch ( InterruptedException ex ){
+                    Thread.currentThread().interrupt();
+                } catch ( ExecutionException ex ){
+                    LOGGER.log(Level.WARNING, "Error refreshing '" + table + "'", ex.getCause() );
+                }
+            } else if ( ttl > 0 && ageMillis > ttl * 1000L ){
+                table.staleReads.incrementAndGet();
+                table.submitRefresh( REFRESH_EXECUTOR, () -> refreshTable( table ) );
+            }
+        }
+    }
+
+    /**
+     * Refresh the table using its own H2 session and Salesforce connection, and record the refresh in the table metrics.
+     */
+    private void refreshTable( Table table ){
+        final long start = System.currentTimeMillis();
+        try ( JdbcConnection h2Session = openH2Session() ){
+            new TransferReader( this, openPartnerConnection(), h2Session ).refreshData( table );
+            table.refreshes.incrementAndGet();
+            LOGGER.info("Refreshed '" + table + "' in " + ( System.currentTimeMillis() - start ) + " ms");
+        } catch ( Throwable ex ){
+            table.failedRefreshes.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Error refreshing '" + table + "', the cached data is kept", ex );
+        } finally {
+            table.lastRefreshMillis.set( System.currentTimeMillis() - start );
+        }
+    }
+
+    /**
+     * Result of the 'show caches' command: the cached tables, their size, age, usage and refresh activity.
+     */
+    private ResultSet getCachesResultSet(){
+        final ArrayResultSet resultSet = new ArrayResultSet();
+        resultSet.setColumnNames(new String[]{"TABLE_NAME", "CACHED_COLUMNS", "FULLY_LOADED", "CACHED_ROWS", "DISK_KB", "AGE_SEC", "ACCESSES", "LAST_ACCESS_SEC",
+                "LOAD_WAITS", "FAILED_LOADS", "REFRESHING", "STALE_READS", "REFRESHES", "FAILED_REFRESHES", "LAST_REFRESH_MS"});
+        for ( Table table : getSchemaDef().getTables() ){
+            final long ageMillis = table.getAgeMillis();
+            if ( ageMillis > -1 || table.isRefreshing() ){
+                final long lastAccessTime = table.getLastAccessTime();
+                resultSet.addRow(new String[]{ table.name, String.valueOf( table.getCachedColumns().size() ), String.valueOf( table.isFullyLoaded() ),
+                        String.valueOf( table.getCachedRows() ), table.getCachedBytes() < 0 ? null : String.valueOf( table.getCachedBytes() / 1024 ), String.valueOf( ageMillis / 1000 ),
+                        String.valueOf( table.getAccessCount() ), lastAccessTime > 0 ? String.valueOf( ( System.currentTimeMillis() - lastAccessTime ) / 1000 ) : null,
+                        String.valueOf( table.loadWaits.get() ), String.valueOf( table.getFailedLoads() ),
+                        String.valueOf( table.isRefreshing() ), String.valueOf( table.staleReads.get() ),
+                        String.valueOf( table.refreshes.get() ), String.valueOf( table.failedRefreshes.get() ), String.valueOf( table.lastRefreshMillis.get() )});
+            }
+        }
+        return resultSet;
+    }
+
+    /**
+     * With pushdown=true (default), a SELECT with LIMIT from one table which is not in the cache is executed in Salesforce,
+     * if SOQL returns the same rows as H2 would. This is used to browse large tables without caching them.
+     * With direct=true, or for a query with the hint /*+ direct *&#47;, any SELECT from one table which can be written in SOQL
+     * is executed in Salesforce, following the SOQL semantics. The pages are requested only when the result set reaches them.
+     * Queries written as 'soql: SELECT ...' or '{soql SELECT ...}' are sent unchanged to Salesforce.
+     * Returns null if the query has to be executed in H2.
+     */
+    private ResultSet executeInSalesforce( String query ) throws SQLException {
+        if ( query == null ){
+            return null;
+        }
+        if ( SHOW_CACHES.matcher( query ).matches() ){
+            return getCachesResultSet();
+        }
+        final String passthroughSoql = SoqlQuery.getPassthroughSoql( query );
+        if ( passthroughSoql != null ){
+            ensureTablesAreLoaded();
+            ensureColumnsAreLoaded();
+            LOGGER.info("Execute in Salesforce: " + passthroughSoql );
+            return SoqlRowSource.createResultSet( partnerConnection, SoqlQuery.parse( passthroughSoql, getSchemaDef() ), 0, getIntParameter("batchsize", 0 ));
+        }
+        final boolean direct = "true".equalsIgnoreCase( getParameter("direct", "false")) || DIRECT_HINT.matcher( query ).find();
+        if ( !direct && !"true".equalsIgnoreCase( getParameter("pushdown", "true"))){
+            return null;
+        }
+        final SelectStatement statement = SqlParser.parseSelect( query );
+        if ( statement == null || ( !direct && statement.limit == null && !statement.isAggregate() && statement.joins.isEmpty() )){
+            return null;
+        }
+        ensureTablesAreLoaded();
+        final Table table = getSchemaDef().getTable( statement.tableName );
+        if ( table == null ){
+            return null;
+        }
+        ensureColumnsAreLoaded();
+        if ( !statement.joins.isEmpty() ){
+            return executeJoinInSalesforce( statement, table, query, direct );
+        }
+        if ( statement.isAggregate() ){
+            return executeAggregateInSalesforce( statement, table, query, direct );
+        }
+        final String soql;
+        if ( direct ){
+            soql = statement.getDirectSoql( table );
+        } else if ( table.isFilterLoaded( statement.getSoqlConditions( table )) && table.getMissingColumns( getColumnsUsedInQuery( table, query )).isEmpty() ){
+            // IF THE ROWS ARE CACHED, H2 IS FASTER
+            return null;
+        } else {
+            soql = statement.getLimitedSoql( table );
+        }
+        if ( soql == null ){
+            return null;
+        }
+        LOGGER.info("Execute in Salesforce: " + soql );
+        return SoqlRowSource.createResultSet( partnerConnection, soql, statement.getSelectedColumns( table ), statement.getSelectedLabels( table ),
+                direct ? 0 : getIntParameter("pagequeue", 2 ), getIntParameter("batchsize", 0 ));
+    }
+
+    /**
+     * A SELECT joining a table with its parent tables is executed as one SOQL query using relationship fields,
+     * without loading the tables, unless all of them are already cached.
+     */
+    private ResultSet executeJoinInSalesforce( SelectStatement statement, Table table, String query, boolean direct ) throws SQLException {
+        boolean cached = !direct;
+        final List<Table> tables = new ArrayList<>();
+        tables.add( table );
+        for ( SelectStatement.Join join : statement.joins ){
+            final Table joinedTable = getSchemaDef().getTable( join.tableName );
+            if ( joinedTable == null ) return null;
+            tables.add( joinedTable );
+        }
+        for ( Table usedTable : tables ){
+            cached &= usedTable.isFilterLoaded( Collections.emptySet() ) && usedTable.getMissingColumns( getColumnsUsedInQuery( usedTable, query )).isEmpty();
+        }
+        final SoqlQuery joinQuery = cached ? null : statement.getJoinQuery( table, getSchemaDef(), !direct );
+        if ( joinQuery == null ){
+            return null;
+        }
+        LOGGER.info("Execute in Salesforce: " + joinQuery.soql );
+        return SoqlRowSource.createResultSet( partnerConnection, joinQuery, direct ? 0 : getIntParameter("pagequeue", 2 ), getIntParameter("batchsize", 0 ));
+    }
+
+    /**
+     * A SELECT with COUNT, SUM, MIN, MAX or GROUP BY is executed as a SOQL aggregate query, which returns only the
+     * result rows. If Salesforce rejects the query, for example because it returns more than 2000 groups, it is executed in H2.
+     */
+    private ResultSet executeAggregateInSalesforce( SelectStatement statement, Table table, String query, boolean direct ) throws SQLException {
+        if ( !direct && table.isFilterLoaded( statement.getSoqlConditions( table )) && table.getMissingColumns( getColumnsUsedInQuery( table, query )).isEmpty() ){
+            return null;
+        }
+        final SoqlQuery aggregateQuery = statement.getAggregateQuery( table, !direct );
+        if ( aggregateQuery == null ){
+            return null;
+        }
+        LOGGER.info("Execute in Salesforce: " + aggregateQuery.soql );
+        try {
+            return SoqlRowSource.createResultSet( partnerConnection, aggregateQuery, 0, getIntParameter("batchsize", 0 ));
+        } catch ( SQLException ex ){
+            LOGGER.log(Level.INFO, "Aggregate query failed in Salesforce, execute it in H2: " + ex.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * With pushdown=true (default), a SELECT from one table loads only the rows matching the WHERE conditions which can be
+     * translated to SOQL. The table keeps the list of loaded filters, a later query is answered from the cache if
+     * its conditions include the conditions of a loaded filter. Returns false if the query is not of this kind.
+     */
+    private boolean transferDataForFilteredTable( String query ) throws SQLException {
+        if ( !"true".equalsIgnoreCase( getParameter("pushdown", "true"))){
+            return false;
+        }
+        final SelectStatement statement = SqlParser.parseSelect( query );
+        final Table table = statement != null && statement.joins.isEmpty() ? getSchemaDef().getTable( statement.tableName ) : null;
+        if ( table == null ){
+            return false;
+        }
+        ensureColumnsAreLoaded();
+        final List<Column> columns = getColumnsUsedInQuery( table, query );
+        final Set<String> filter = statement.getSoqlConditions( table );
+        if ( !table.isFilterLoaded( filter ) || !table.getMissingColumns( columns ).isEmpty() ) {
+            reader.transferData( table, columns, filter );
+        }
+        return true;
+    }
+
+    /**
+     * With pushdown=true (default), for a join of two tables where the WHERE clause filters one table, this table is loaded
+     * first with its filter. The join keys of its rows are read, then only the rows of the other table having these keys,
+     * using IN conditions. For a LEFT JOIN only the first table can select the rows of the second one.
+     * If there are more than semijoinkeys keys, the other table is loaded with its own filter only.
+     * Returns false if the query is not of this kind.
+     */
+    private boolean transferDataForSemiJoin( String query ) throws SQLException {
+        final int maxKeys = getIntParameter("semijoinkeys", 10000 );
+        if ( !"true".equalsIgnoreCase( getParameter("pushdown", "true")) || maxKeys < 1 ){
+            return false;
+        }
+        final SelectStatement statement = SqlParser.parseSelect( query );
+        if ( statement == null || statement.joins.size() != 1 ){
+            return false;
+        }
+        final SelectStatement.Join join = statement.joins.get(0);
+        final Table first = getSchemaDef().getTable( statement.tableName );
+        final Table second = getSchemaDef().getTable( join.tableName );
+        if ( first == null || second == null || first == second ){
+            return false;
+        }
+        ensureColumnsAreLoaded();
+        final Condition.ColumnResolver firstResolver = statement.getJoinColumnResolver( statement.tableAlias != null ? statement.tableAlias : statement.tableName, first, second );
+        final Condition.ColumnResolver secondResolver = statement.getJoinColumnResolver( join.tableAlias != null ? join.tableAlias : join.tableName, second, first );
+        Column firstKey = null, secondKey = null;
+        for ( Condition.ColumnRef columnRef : new Condition.ColumnRef[]{ join.leftColumn, join.rightColumn } ){
+            final Column firstColumn = firstResolver.resolve( columnRef.qualifier, columnRef.name );
+            if ( firstColumn != null && firstKey == null ) firstKey = firstColumn;
+            else secondKey = secondResolver.resolve( columnRef.qualifier, columnRef.name );
+        }
+        if ( !isKeyColumn( firstKey ) || !isKeyColumn( secondKey )){
+            return false;
+        }
+        final Set<String> firstFilter = statement.getSoqlConditions( firstResolver );
+        // FOR A LEFT JOIN, FILTERING THE SECOND TABLE WOULD ADD ROWS WITHOUT MATCH
+        final Set<String> secondFilter = join.left ? Collections.emptySet() : statement.getSoqlConditions( secondResolver );
+        final boolean firstSelects = !firstFilter.isEmpty();
+        if ( !firstSelects && ( join.left || secondFilter.isEmpty() )){
+            return false;
+        }
+        final Table selectingTable = firstSelects ? first : second, selectedTable = firstSelects ? second : first;
+        final Column selectingKey = firstSelects ? firstKey : secondKey, selectedKey = firstSelects ? secondKey : firstKey;
+        final Set<String> selectingFilter = firstSelects ? firstFilter : secondFilter, selectedFilter = firstSelects ? secondFilter : firstFilter;
+        final List<Column> selectingColumns = getColumnsUsedInQuery( selectingTable, query );
+        final List<Column> selectedColumns = getColumnsUsedInQuery( selectedTable, query );
+        if ( !selectingTable.isFilterLoaded( selectingFilter ) || !selectingTable.getMissingColumns( selectingColumns ).isEmpty() ){
+            reader.transferData( selectingTable, selectingColumns, selectingFilter );
+        }
+        // THE ROWS LOADED BY THE SAME SEMI-JOIN BEFORE ARE RECORDED UNDER IT, THE KEYS ARE NOT READ AGAIN
+        final Set<String> semiJoinFilter = new LinkedHashSet<>( selectedFilter );
+        semiJoinFilter.add( selectedKey.name + " IN (SELECT " + selectingKey.name + " FROM " + selectingTable.name + " WHERE " + String.join(" AND ", selectingFilter ) + ")" );
+        if ( selectedTable.isFilterLoaded( semiJoinFilter )){
+            if ( !selectedTable.getMissingColumns( selectedColumns ).isEmpty() ){
+                reader.transferData( selectedTable, selectedColumns, semiJoinFilter );
+            }
+            return true;
+        }
+        Set<String> keys = null;
+        try {
+            keys = reader.readKeys( selectingTable, selectingKey, selectingFilter, maxKeys );
+        } catch ( SQLException ex ){
+            LOGGER.log(Level.WARNING, "Cannot read the '" + selectingTable + "' join keys", ex );
+        }
+        if ( keys != null ){
+            reader.transferData( selectedTable, selectedColumns, selectedFilter, selectedKey, keys, semiJoinFilter );
+        } else {
+            reader.transferData( selectedTable, selectedColumns, selectedFilter );
+        }
+        return true;
+    }
+
+    private static boolean isKeyColumn( Column column ){
+        return column != null && ( "id".equalsIgnoreCase( column.getType() ) || "reference".equalsIgnoreCase( column.getType() ));
+    }
+
+    /**
+     * With lazycolumns=true (default) only the columns named in the query are transferred, plus the Id.
+     * Queries selecting '*' or 'alias.*' require all columns.
+     */
+    private List<Column> getColumnsUsedInQuery( Table table, String query ){
+        if ( !"true".equalsIgnoreCase( getParameter("lazycolumns", "true")) || SELECT_ALL_COLUMNS.matcher( query ).find() ){
+            return table.columns;
+        }
+        final Set<String> words = new HashSet<>();
+        for ( String word : NON_WORD_CHARS.split( query ) ){
+            words.add( word.toLowerCase() );
+        }
+        return table.getColumnsUsedIn( words );
+    }
+
+    /**
+     * Load the tables concurrently, each using its own H2 session and Salesforce connection.
+     * Returns when all the tables are committed.
+     */
+    private void transferDataInParallel( Map<Table,List<Column>> tables, int loadThreads ) throws SQLException {
+        LOGGER.info("Transfer " + tables.size() + " tables using " + loadThreads + " threads...");
+        final ExecutorService executor = Executors.newFixedThreadPool( loadThreads );
+        try {
+            final List<Future<Table>> futures = new ArrayList<>();
+            for ( Map.Entry<Table,List<Column>> entry : tables.entrySet() ) {
+                futures.add( executor.submit( () -> {
+                    try ( JdbcConnection h2Session = openH2Session() ) {
+                        new TransferReader(this, openPartnerConnection(), h2Session).transferData( entry.getKey(), entry.getValue() );
+                    }
+                    return entry.getKey();
+                }));
+            }
+            SQLException exception = null;
+            for ( Future<Table> future : futures ){
+                try {
+                    future.get();
+                } catch ( InterruptedException ex ){
+                    Thread.currentThread().interrupt();
+                    throw new SQLException( "Interrupted while loading tables", ex );
+                } catch ( ExecutionException ex ){
+                    LOGGER.log(Level.SEVERE, "Error transferring data", ex.getCause() );
+                    if ( exception == null ) {
+                        exception = ex.getCause() instanceof SQLException ? (SQLException) ex.getCause() : new SQLException(ex.getCause());
+                    }
                 }
             }
+            if ( exception != null ){
+                throw exception;
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -127,6 +757,8 @@ public class SalesforceConnection implements Connection {
 
         private final Object target;
         final Statement proxyStatement;
+        // RESULT OF THE LAST QUERY, IF EXECUTED DIRECTLY IN SALESFORCE
+        private ResultSet salesforceResultSet;
 
         StatementProxy(Object target) {
             this.target = target;
@@ -137,35 +769,169 @@ public class SalesforceConnection implements Connection {
 
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ( method.getName().startsWith("execute") && args != null && args.length > 0 && args[0] instanceof String ){
+                final List<Table> usedTables = acquireTables( (String)args[0] );
+                try {
+                    return invokeStatement( method, args );
+                } finally {
+                    for ( Table table : usedTables ){
+                        table.release();
+                    }
+                }
+            }
+            return invokeStatement( method, args );
+        }
+
+        private Object invokeStatement( Method method, Object[] args ) throws Throwable {
+            switch ( method.getName() ){
+                case "getResultSet":
+                    if ( salesforceResultSet != null ) return salesforceResultSet;
+                    break;
+                case "getUpdateCount":
+                    if ( salesforceResultSet != null ) return -1;
+                    break;
+                case "getMoreResults":
+                case "close":
+                    closeSalesforceResultSet();
+                    break;
+                case "executeQuery":
+                case "execute":
+                    closeSalesforceResultSet();
+                    if ( args != null && args.length == 1 && args[0] != null ){
+                        salesforceResultSet = executeInSalesforce( args[0].toString() );
+                        if ( salesforceResultSet != null ){
+                            return "execute".equals( method.getName() ) ? Boolean.TRUE : salesforceResultSet;
+                        }
+                    }
+                    break;
+                default:
+                    if ( method.getName().startsWith("execute")) closeSalesforceResultSet();
+            }
             if ( args != null && args.length > 0 && args[0] != null ) {
                 final String firstArgument = args[0].toString();
                 if ( RELOAD_SCHEMA.matcher(firstArgument).matches() ){
-                    getSchemaDef().refreshTables( partnerConnection );
-                    getSchemaDef().refreshColumns( partnerConnection );
+                    getSchemaDef().reload( partnerConnection );
+                    synchronized ( restoredCaches ){
+                        restoredCaches.remove( databaseName );
+                    }
+                    restoreCacheState();
+                    return getCommandResult( method );
                 } else if ( CACHE_ALL.matcher(firstArgument).matches()){
                     new TransferReader(SalesforceConnection.this).transferAllData();
-                } if ( CLEAN_CACHES.matcher(firstArgument).matches()){
-                    for ( Table table : getSchemaDef().tables ){
+                    evictTables( null );
+                    return getCommandResult( method );
+                } else if ( REFRESH_CACHES.matcher(firstArgument).matches()){
+                    final TransferReader refreshReader = new TransferReader(SalesforceConnection.this);
+                    for ( Table table : getSchemaDef().getTables() ){
+                        refreshReader.refreshData( table );
+                    }
+                    return getCommandResult( method );
+                } else if ( CLEAN_CACHES.matcher(firstArgument).matches()){
+                    for ( Table table : getSchemaDef().getTables() ){
+                        if ( memoryCache && table.isLoaded() ){
+                            dropCachedTable( table );
+                        }
                         table.setLoaded( false );
                     }
+                    CacheState.clear( h2Connection );
+                    return getCommandResult( method );
                 } else {
                     transferDataForTablesFromQuery(firstArgument);
                 }
             }
             return method.invoke(target, args);
         }
+
+        /**
+         * The custom commands are not known by H2, so they are not executed there. Return an empty result.
+         */
+        private Object getCommandResult( Method method ){
+            if ( method.getReturnType() == boolean.class ) return false;
+            if ( method.getReturnType() == int.class ) return 0;
+            if ( method.getReturnType() == long.class ) return 0L;
+            if ( method.getReturnType() == ResultSet.class ) return new ArrayResultSet();
+            return null;
+        }
+
+        private void closeSalesforceResultSet() throws SQLException {
+            if ( salesforceResultSet != null ){
+                salesforceResultSet.close();
+                salesforceResultSet = null;
+            }
+        }
+    }
+
+    private interface H2StatementFactory<T extends Statement> {
+        T prepare() throws SQLException;
+    }
+
+    /**
+     * Load the tables used by the statement, then prepare it in H2. The tables are marked as in use until the statement
+     * is closed, so they are not evicted while it may still be executed.
+     */
+    private <T extends Statement> T proxyPreparedStatement( Class<T> type, String sql, H2StatementFactory<T> factory ) throws SQLException {
+        final List<Table> usedTables = sql != null ? acquireTables( sql ) : new ArrayList<>();
+        try {
+            transferDataForTablesFromQuery( sql );
+            final T statement = factory.prepare();
+            final PreparedStatementProxy statementProxy = new PreparedStatementProxy( statement, usedTables );
+            openPreparedStatements.add( statementProxy );
+            return type.cast( Proxy.newProxyInstance( type.getClassLoader(), new Class<?>[]{ type }, statementProxy ));
+        } catch ( SQLException | RuntimeException ex ){
+            for ( Table table : usedTables ){
+                table.release();
+            }
+            throw ex;
+        }
+    }
+
+    private class PreparedStatementProxy implements InvocationHandler {
+
+        private final Statement target;
+        private final List<Table> usedTables;
+        private boolean released = false;
+
+        PreparedStatementProxy( Statement target, List<Table> usedTables ){
+            this.target = target;
+            this.usedTables = usedTables;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ( method.getName().startsWith("execute") ){
+                // EACH EXECUTION COUNTS AS ONE ACCESS FOR THE LRU AND LFU EVICTION
+                for ( Table table : usedTables ){
+                    table.recordAccess();
+                }
+            } else if ( "close".equals( method.getName() )){
+                releaseTables();
+            }
+            try {
+                return method.invoke( target, args );
+            } catch ( InvocationTargetException ex ){
+                throw ex.getCause();
+            }
+        }
+
+        private synchronized void releaseTables(){
+            if ( !released ){
+                released = true;
+                openPreparedStatements.remove( this );
+                for ( Table table : usedTables ){
+                    table.release();
+                }
+            }
+        }
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareStatement( sql );
+        return proxyPreparedStatement( PreparedStatement.class, sql, () -> h2Connection.prepareStatement( sql ));
     }
 
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareCall( sql );
+        return proxyPreparedStatement( CallableStatement.class, sql, () -> h2Connection.prepareCall( sql ));
     }
 
     @Override
@@ -196,9 +962,59 @@ public class SalesforceConnection implements Connection {
 
     @Override
     public void close() throws SQLException {
+        // STATEMENTS LEFT OPEN ARE CLOSED BY H2, THEIR TABLES MAY BE EVICTED AGAIN
+        for ( PreparedStatementProxy statement : openPreparedStatements ){
+            statement.releaseTables();
+        }
+        if ( memoryCache ){
+            synchronized ( memoryConnections ){
+                if ( !h2Connection.isClosed() && memoryConnections.merge( databaseName, -1, Integer::sum ) == 0 ){
+                    memoryConnections.remove( databaseName );
+                    shutdownMemoryDatabase();
+                }
+            }
+        }
         h2Connection.close();
     }
 
+    /**
+     * Free the memory of the in-memory database. The tables have to be loaded again by the next connection.
+     */
+    private void shutdownMemoryDatabase(){
+        LOGGER.log(Level.INFO, "Shut down H2 database '" + h2JdbcUrl + "'");
+        for ( Table table : getSchemaDef().getTables() ){
+            table.setLoaded( false );
+        }
+        synchronized ( restoredCaches ){
+            restoredCaches.remove( databaseName );
+        }
+        try ( Statement st = h2Connection.createStatement() ){
+            st.execute("shutdown");
+        } catch ( SQLException ex ){
+            LOGGER.log(Level.WARNING, "Error shutting down H2 database '" + h2JdbcUrl + "'", ex );
+        }
+    }
+
+    /**
+     * Drop the cached data of the table, unless it is being loaded. Used to free the memory of the in-memory database.
+     */
+    private void dropCachedTable( Table table ){
+        if ( !table.loadLock.tryLock() ){
+            return;
+        }
+        try {
+            synchronized ( getH2DdlLock() ){
+                try ( Statement st = h2Connection.createStatement() ){
+                    st.execute("drop table if exists \"" + table.name + "\"");
+                }
+            }
+        } catch ( SQLException ex ){
+            LOGGER.log(Level.WARNING, "Error dropping '" + table + "' from the cache", ex );
+        } finally {
+            table.loadLock.unlock();
+        }
+    }
+
     @Override
     public boolean isClosed() throws SQLException {
         return h2Connection.isClosed();
@@ -253,14 +1069,12 @@ public class SalesforceConnection implements Connection {
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareStatement( sql, resultSetType, resultSetConcurrency );
+        return proxyPreparedStatement( PreparedStatement.class, sql, () -> h2Connection.prepareStatement( sql, resultSetType, resultSetConcurrency ));
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareCall( sql, resultSetType, resultSetConcurrency );
+        return proxyPreparedStatement( CallableStatement.class, sql, () -> h2Connection.prepareCall( sql, resultSetType, resultSetConcurrency ));
     }
 
     @Override
@@ -307,32 +1121,27 @@ public class SalesforceConnection implements Connection {
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareStatement( sql, resultSetType, resultSetConcurrency, resultSetHoldability );
+        return proxyPreparedStatement( PreparedStatement.class, sql, () -> h2Connection.prepareStatement( sql, resultSetType, resultSetConcurrency, resultSetHoldability ));
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        transferDataForTablesFromQuery(sql );
-        return h2Connection.prepareCall( sql, resultSetType, resultSetConcurrency, resultSetHoldability );
+        return proxyPreparedStatement( CallableStatement.class, sql, () -> h2Connection.prepareCall( sql, resultSetType, resultSetConcurrency, resultSetHoldability ));
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareStatement( sql, autoGeneratedKeys );
+        return proxyPreparedStatement( PreparedStatement.class, sql, () -> h2Connection.prepareStatement( sql, autoGeneratedKeys ));
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareStatement(sql, columnIndexes);
+        return proxyPreparedStatement( PreparedStatement.class, sql, () -> h2Connection.prepareStatement( sql, columnIndexes ));
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-        transferDataForTablesFromQuery( sql );
-        return h2Connection.prepareStatement( sql, columnNames);
+        return proxyPreparedStatement( PreparedStatement.class, sql, () -> h2Connection.prepareStatement( sql, columnNames ));
     }
 
     @Override
@@ -35,7 +35,7 @@ public class SalesforceMetaData implements DatabaseMetaData {
         resultSet.setColumnNames(new String[]{"TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME",
                 "TABLE_TYPE", "REMARKS", "TYPE_CAT", "TYPE_SCHEM", "TYPE_NAME", "SELF_REFERENCING_COL_NAME",
                 "REF_GENERATION"});
-        for (Table table: connection.getSchemaDef().tables ) {
+        for (Table table: connection.getSchemaDef().getTables() ) {
             resultSet.addRow(new String[]{null, DEFAULT_SCHEMA_NAME, table.name, "TABLE", table.comment, "", "", "", "", ""});
         }
         return resultSet;
@@ -65,7 +65,7 @@ public class SalesforceMetaData implements DatabaseMetaData {
                 "NULLABLE", "REMARKS", "COLUMN_DEF", "SQL_DATA_TYPE", "SQL_DATETIME_SUB", "CHAR_OCTET_LENGTH",
                 "ORDINAL_POSITION", "IS_NULLABLE", "SCOPE_CATLOG", "SCOPE_SCHEMA", "SCOPE_TABLE",
                 "SOURCE_DATA_TYPE", "IS_AUTOINCREMENT" });
-        for ( Table table : connection.getSchemaDef().tables ){
+        for ( Table table : connection.getSchemaDef().getTables() ){
             if ( tableNamePattern == null || table.name.contains(tableNamePattern)){
                 for ( Column column : table.columns ){
                     if ( columnNamePattern == null|| column.name.contains( columnNamePattern )) {
@@ -108,7 +108,7 @@ public class SalesforceMetaData implements DatabaseMetaData {
         ArrayResultSet result = new ArrayResultSet();
         result.setColumnNames(new String[] { "TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME",
                 "KEY_SEQ", "PK_NAME" });
-        for ( Table table : connection.getSchemaDef().tables){
+        for ( Table table : connection.getSchemaDef().getTables()){
             if ( table.name.equals( tableName )){
                 for ( Column column : table.columns ){
                     if ( "Id".equals(column.name )) {
@@ -130,7 +130,7 @@ public class SalesforceMetaData implements DatabaseMetaData {
         result.setColumnNames(new String[]{"PKTABLE_CAT", "PKTABLE_SCHEM", "PKTABLE_NAME", "PKCOLUMN_NAME", "FKTABLE_CAT", "FKTABLE_SCHEM",
                 "FKTABLE_NAME", "FKCOLUMN_NAME", "KEY_SEQ", "UPDATE_RULE", "DELETE_RULE", "FK_NAME", "PK_NAME", "DEFERRABILITY"});
 
-        for ( Table table : connection.getSchemaDef().tables ){
+        for ( Table table : connection.getSchemaDef().getTables() ){
             if ( tableNamePattern == null || table.name.contains( tableNamePattern )){
                 for ( ForeignKey reference : table.foreignKeys ){
                     result.addRow(new String[] {
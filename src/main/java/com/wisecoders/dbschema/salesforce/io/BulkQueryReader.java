@@ -0,0 +1,314 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import com.sforce.ws.ConnectorConfig;
+import com.wisecoders.dbschema.salesforce.schema.Column;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
+
+/**
+ * Read a SOQL query using a Bulk API 2.0 query job. The job is submitted with the session of the partner connection,
+ * polled until Salesforce completes it, then the CSV result pages are parsed while they are downloaded and written
+ * into the cache. For large objects this needs far fewer requests than the partner API queryMore() pages.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class BulkQueryReader {
+
+    private static final Pattern SERVICE_ENDPOINT = Pattern.compile( "^(.*?)/services/Soap/[a-z]/(\\d+\\.\\d+)" );
+    private static final long MIN_POLL_MILLIS = 200, MAX_POLL_MILLIS = 10_000;
+    // ROWS INSERTED IN ONE H2 BATCH. A RESULT PAGE MAY HOLD HUNDREDS OF THOUSANDS OF ROWS.
+    private static final int COMMIT_ROWS = 2000;
+
+    private final ConnectorConfig config;
+    private final String baseUrl;
+
+    public BulkQueryReader( ConnectorConfig config ) throws SQLException {
+        this.config = config;
+        final Matcher matcher = SERVICE_ENDPOINT.matcher( config.getServiceEndpoint() );
+        if ( !matcher.find() ){
+            throw new SQLException("Cannot find the REST API address for service endpoint '" + config.getServiceEndpoint() + "'");
+        }
+        this.baseUrl = matcher.group(1) + "/services/data/v" + matcher.group(2);
+    }
+
+    /**
+     * Bulk API 2.0 does not return base64 fields. Compound address and location fields are not returned either,
+     * but their components are separate fields, so these columns are left empty.
+     */
+    public static boolean isSupported( List<Column> columns ){
+        for ( Column column : columns ){
+            if ( column.getJavaType() == Types.BLOB ) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Run the query and write the rows using the writer. Returns the number of rows.
+     */
+    public int transferRecords( String table, List<Column> columns, TransferWriter writer ) throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for ( Column column : columns ){
+            if ( !isCompound( column )){
+                if ( sb.length() > 0 ) sb.append(", ");
+                sb.append( column.name );
+            }
+        }
+        final String jobId = createJob( "SELECT " + sb + " FROM " + table );
+        try {
+            waitForJob( jobId );
+            int rows = 0;
+            String locator = null;
+            do {
+                final HttpURLConnection http = openConnection( "GET", "/jobs/query/" + jobId + "/results" +
+                        ( locator != null ? "?locator=" + URLEncoder.encode( locator, "UTF-8" ) : "" ), "text/csv" );
+                locator = http.getHeaderField("Sforce-Locator");
+                try ( Reader reader = new InputStreamReader( getInputStream( http ), StandardCharsets.UTF_8 )){
+                    rows += copyCsv( reader, columns, writer );
+                }
+                if ( locator == null || locator.isEmpty() || "null".equals( locator )) locator = null;
+            } while ( locator != null );
+            return rows;
+        } finally {
+            deleteJob( jobId );
+        }
+    }
+
+    private static boolean isCompound( Column column ){
+        return "address".equalsIgnoreCase( column.getType() ) || "location".equalsIgnoreCase( column.getType() );
+    }
+
+    private String createJob( String soql ) throws IOException, SQLException {
+        final HttpURLConnection http = openConnection( "POST", "/jobs/query", "application/json" );
+        final String body = "{\"operation\":\"query\",\"query\":\"" + escapeJson( soql ) + "\"}";
+        final String response = readResponse( http, body );
+        final String jobId = getJsonValue( response, "id" );
+        if ( jobId == null ){
+            throw new SQLException("Bulk API query job was not created: " + response );
+        }
+        LOGGER.log(Level.INFO, "Bulk API query job " + jobId + " for " + soql );
+        return jobId;
+    }
+
+    private void waitForJob( String jobId ) throws IOException, SQLException {
+        long pollMillis = MIN_POLL_MILLIS;
+        while ( true ){
+            final String response = readResponse( openConnection( "GET", "/jobs/query/" + jobId, "application/json" ), null );
+            final String state = getJsonValue( response, "state" );
+            if ( "JobComplete".equals( state )){
+                return;
+            }
+            if ( "Failed".equals( state ) || "Aborted".equals( state ) || state == null ){
+                throw new SQLException("Bulk API query job " + jobId + " " + state + ": " + getJsonValue( response, "errorMessage" ));
+            }
+            try {
+                Thread.sleep( pollMillis );
+            } catch ( InterruptedException ex ){
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for Bulk API query job " + jobId, ex );
+            }
+            pollMillis = Math.min( pollMillis * 2, MAX_POLL_MILLIS );
+        }
+    }
+
+    private void deleteJob( String jobId ){
+        try {
+            readResponse( openConnection( "DELETE", "/jobs/query/" + jobId, "application/json" ), null );
+        } catch ( Exception ex ){
+            LOGGER.log(Level.FINE, "Cannot delete Bulk API query job " + jobId, ex );
+        }
+    }
+
+    private int copyCsv( Reader reader, List<Column> columns, TransferWriter writer ) throws Exception {
+        final CsvReader csv = new CsvReader( reader );
+        final List<String> header = csv.readRecord();
+        if ( header == null ) return 0;
+        final int[] columnIndexes = new int[ header.size() ];
+        for ( int i = 0; i < header.size(); i++ ){
+            columnIndexes[i] = -1;
+            for ( int j = 0; j < columns.size(); j++ ){
+                if ( columns.get(j).name.equalsIgnoreCase( header.get(i) )) columnIndexes[i] = j;
+            }
+        }
+        final String[] values = new String[ columns.size() ];
+        int rows = 0;
+        List<String> record;
+        while ( ( record = csv.readRecord() ) != null ){
+            for ( int i = 0; i < columnIndexes.length && i < record.size(); i++ ){
+                if ( columnIndexes[i] > -1 ) values[ columnIndexes[i] ] = record.get(i);
+            }
+            writer.transferValues( values );
+            if ( ++rows % COMMIT_ROWS == 0 ){
+                writer.commitBatch();
+            }
+        }
+        writer.commitBatch();
+        return rows;
+    }
+
+    private HttpURLConnection openConnection( String method, String path, String accept ) throws IOException {
+        final URL url = new URL( baseUrl + path );
+        final HttpURLConnection http = (HttpURLConnection)( config.getProxy() != null ? url.openConnection( config.getProxy() ) : url.openConnection() );
+        http.setRequestMethod( method );
+        http.setConnectTimeout( config.getConnectionTimeout() );
+        http.setReadTimeout( config.getReadTimeout() );
+        http.setRequestProperty( "Authorization", "Bearer " + config.getSessionId() );
+        http.setRequestProperty( "Accept", accept );
+        if ( config.isCompression() ){
+            http.setRequestProperty( "Accept-Encoding", "gzip" );
+        }
+        return http;
+    }
+
+    private static String readResponse( HttpURLConnection http, String body ) throws IOException {
+        if ( body != null ){
+            http.setDoOutput( true );
+            http.setRequestProperty( "Content-Type", "application/json; charset=UTF-8" );
+            try ( OutputStream out = http.getOutputStream() ){
+                out.write( body.getBytes( StandardCharsets.UTF_8 ));
+            }
+        }
+        try ( InputStream in = getInputStream( http )){
+            return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+        }
+    }
+
+    private static InputStream getInputStream( HttpURLConnection http ) throws IOException {
+        final int status = http.getResponseCode();
+        if ( status >= 400 ){
+            final InputStream error = http.getErrorStream();
+            String message = "";
+            if ( error != null ){
+                try ( InputStream in = "gzip".equalsIgnoreCase( http.getContentEncoding() ) ? new GZIPInputStream( error ) : error ){
+                    message = new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+                }
+            }
+            throw new IOException("Bulk API " + http.getRequestMethod() + " " + http.getURL() + " returned " + status + ": " + message );
+        }
+        final InputStream in = http.getInputStream();
+        return "gzip".equalsIgnoreCase( http.getContentEncoding() ) ? new GZIPInputStream( in ) : in;
+    }
+
+    static String escapeJson( String value ){
+        final StringBuilder sb = new StringBuilder();
+        for ( char c : value.toCharArray() ){
+            switch ( c ){
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if ( c < 0x20 ) sb.append( String.format( "\\u%04x", (int)c ));
+                    else sb.append( c );
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The string value of a top-level JSON property. The job responses are flat objects, no JSON parser is needed.
+     */
+    static String getJsonValue( String json, String name ){
+        final Matcher matcher = Pattern.compile( "\"" + Pattern.quote( name ) + "\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"" ).matcher( json );
+        if ( !matcher.find() ) return null;
+        final String value = matcher.group(1);
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < value.length(); i++ ){
+            char c = value.charAt(i);
+            if ( c == '\\' && i + 1 < value.length() ){
+                c = value.charAt( ++i );
+                if ( c == 'n' ) c = '\n';
+                else if ( c == 't' ) c = '\t';
+                else if ( c == 'r' ) c = '\r';
+            }
+            sb.append( c );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * RFC 4180 CSV reader. Salesforce writes empty values for null, returned here as null.
+     */
+    static class CsvReader {
+
+        private final Reader reader;
+        private final char[] buffer = new char[ 64 * 1024 ];
+        private int position, length;
+        private final StringBuilder value = new StringBuilder();
+
+        CsvReader( Reader reader ){
+            this.reader = reader;
+        }
+
+        private int read() throws IOException {
+            if ( position == length ){
+                length = reader.read( buffer, 0, buffer.length );
+                position = 0;
+                if ( length < 1 ){
+                    length = 0;
+                    return -1;
+                }
+            }
+            return buffer[ position++ ];
+        }
+
+        /**
+         * The next record, or null at the end of the input.
+         */
+        List<String> readRecord() throws IOException {
+            int c = read();
+            if ( c == -1 ) return null;
+            final List<String> record = new ArrayList<>();
+            value.setLength( 0 );
+            boolean quoted = false;
+            while ( true ){
+                if ( quoted ){
+                    if ( c == -1 ){
+                        throw new IOException("Unterminated quoted value in Bulk API result");
+                    } else if ( c == '"' ){
+                        c = read();
+                        if ( c == '"' ){
+                            value.append('"');
+                        } else {
+                            quoted = false;
+                            continue;
+                        }
+                    } else {
+                        value.append( (char)c );
+                    }
+                } else if ( c == '"' ){
+                    quoted = true;
+                } else if ( c == ',' ){
+                    record.add( value.length() > 0 ? value.toString() : null );
+                    value.setLength( 0 );
+                } else if ( c == '\n' || c == -1 ){
+                    record.add( value.length() > 0 ? value.toString() : null );
+                    return record;
+                } else if ( c != '\r' ){
+                    value.append( (char)c );
+                }
+                c = read();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import com.wisecoders.dbschema.salesforce.SalesforceConnection;
+import com.wisecoders.dbschema.salesforce.schema.Column;
+import com.wisecoders.dbschema.salesforce.schema.Schema;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.logging.Level;
+
+import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
+import static com.wisecoders.dbschema.salesforce.io.TransferWriter.QUOTE_CHAR;
+
+/**
+ * The load state of the cached tables is saved in the H2 table _cache_state, next to the data, so a new connection,
+ * also after a restart, uses the tables already in the H2 database instead of loading them again.
+ * For each table it keeps the load time, the sync timestamp, the cached columns, the loaded filters, the number of rows,
+ * the disk space and a hash of the column types. A table is restored only if its H2 table has the saved number of rows and the columns
+ * still have the saved types, otherwise it is loaded again when a query uses it.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class CacheState {
+
+    public static final String STATE_TABLE = "_cache_state";
+    private static final String QUOTED_STATE_TABLE = QUOTE_CHAR + STATE_TABLE + QUOTE_CHAR;
+
+    public static void createStateTable( SalesforceConnection salesforceConnection, Connection h2Connection ) throws SQLException {
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            try ( Statement st = h2Connection.createStatement() ){
+                st.execute("create table if not exists " + QUOTED_STATE_TABLE + "(" +
+                        "table_name varchar not null primary key, " +
+                        "load_time bigint, " +
+                        "sync_timestamp bigint, " +
+                        "cached_columns varchar, " +
+                        "loaded_filters clob, " +
+                        "row_count bigint, " +
+                        "disk_bytes bigint, " +
+                        "schema_hash varchar)");
+                if ( !h2Connection.getAutoCommit() ) h2Connection.commit();
+            }
+        }
+    }
+
+    /**
+     * Save the current state of the table. A table which is not loaded is removed from the saved state.
+     * Measuring the disk space writes the recent changes to disk, so it is done only if requested. Otherwise the size is -1.
+     */
+    public static void save( Connection h2Connection, Table table, boolean measureDiskSpace ) throws SQLException {
+        if ( !table.isLoaded() ){
+            try ( PreparedStatement st = h2Connection.prepareStatement("delete from " + QUOTED_STATE_TABLE + " where table_name = ?") ){
+                st.setString( 1, table.name );
+                st.execute();
+            }
+            return;
+        }
+        final List<Column> columns = table.getCachedColumns();
+        final StringBuilder columnNames = new StringBuilder();
+        for ( Column column : columns ){
+            if ( columnNames.length() > 0 ) columnNames.append(",");
+            columnNames.append( column.name );
+        }
+        final Calendar syncTimestamp = table.getSyncTimestamp();
+        table.setCacheSize( countRows( h2Connection, table ), measureDiskSpace ? getDiskSpaceUsed( h2Connection, table ) : -1 );
+        try ( PreparedStatement st = h2Connection.prepareStatement("merge into " + QUOTED_STATE_TABLE +
+                "(table_name, load_time, sync_timestamp, cached_columns, loaded_filters, row_count, disk_bytes, schema_hash) key(table_name) values(?,?,?,?,?,?,?,?)") ){
+            st.setString( 1, table.name );
+            st.setLong( 2, table.getLoadTime() );
+            if ( syncTimestamp != null ) st.setLong( 3, syncTimestamp.getTimeInMillis() );
+            else st.setNull( 3, Types.BIGINT );
+            st.setString( 4, columnNames.toString() );
+            st.setString( 5, encodeFilters( table.getLoadedFilters() ));
+            st.setLong( 6, table.getCachedRows() );
+            st.setLong( 7, table.getCachedBytes() );
+            st.setString( 8, getSchemaHash( columns ));
+            st.execute();
+        }
+        if ( !h2Connection.getAutoCommit() ) h2Connection.commit();
+    }
+
+    /**
+     * Mark as loaded the tables of the schema which have a valid saved state. Returns the number of restored tables.
+     */
+    public static int restore( Connection h2Connection, Schema schema ) throws SQLException {
+        int restored = 0;
+        try ( Statement st = h2Connection.createStatement();
+              ResultSet rs = st.executeQuery("select table_name, load_time, sync_timestamp, cached_columns, loaded_filters, row_count, disk_bytes, schema_hash from " + QUOTED_STATE_TABLE ) ){
+            while ( rs.next() ){
+                final Table table = schema.getTable( rs.getString(1) );
+                if ( table == null || table.isLoaded() ){
+                    continue;
+                }
+                final List<Column> columns = new ArrayList<>();
+                for ( String columnName : rs.getString(4).split(",") ){
+                    final Column column = table.getColumn( columnName );
+                    if ( column != null ) columns.add( column );
+                }
+                if ( columns.isEmpty() || !getSchemaHash( columns ).equals( rs.getString(8) ) ){
+                    LOGGER.log(Level.INFO, "Cached table '" + table + "' has other columns in Salesforce, it will be loaded again");
+                    continue;
+                }
+                final long rowCount;
+                try {
+                    rowCount = countRows( h2Connection, table );
+                } catch ( SQLException ex ){
+                    LOGGER.log(Level.INFO, "Cached table '" + table + "' is missing, it will be loaded again");
+                    continue;
+                }
+                if ( rowCount != rs.getLong(6) ){
+                    LOGGER.log(Level.INFO, "Cached table '" + table + "' has " + rowCount + " rows instead of " + rs.getLong(6) + ", it will be loaded again");
+                    continue;
+                }
+                Calendar syncTimestamp = null;
+                final long syncMillis = rs.getLong(3);
+                if ( !rs.wasNull() ){
+                    syncTimestamp = new GregorianCalendar( TimeZone.getTimeZone("UTC") );
+                    syncTimestamp.setTimeInMillis( syncMillis );
+                }
+                table.setRestored( columns, decodeFilters( rs.getString(5) ), rs.getLong(2), syncTimestamp );
+                table.setCacheSize( rowCount, rs.getLong(7) );
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Remove the saved state of all tables.
+     */
+    public static void clear( Connection h2Connection ) throws SQLException {
+        try ( Statement st = h2Connection.createStatement() ){
+            st.execute("delete from " + QUOTED_STATE_TABLE );
+        }
+        if ( !h2Connection.getAutoCommit() ) h2Connection.commit();
+    }
+
+    private static long countRows( Connection h2Connection, Table table ) throws SQLException {
+        try ( Statement st = h2Connection.createStatement();
+              ResultSet rs = st.executeQuery("select count(*) from " + QUOTE_CHAR + table.name + QUOTE_CHAR ) ){
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Bytes used by the table and its indexes in the H2 file. The recent changes are written first, pages still in memory are not counted.
+     */
+    public static long getDiskSpaceUsed( Connection h2Connection, Table table ) throws SQLException {
+        try ( Statement st = h2Connection.createStatement() ){
+            st.execute("checkpoint");
+        }
+        try ( PreparedStatement st = h2Connection.prepareStatement("select disk_space_used(?)") ){
+            st.setString( 1, QUOTE_CHAR + table.name + QUOTE_CHAR );
+            try ( ResultSet rs = st.executeQuery() ){
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * The H2 types of the columns change if Salesforce changes the field types. Then the cached data cannot be used.
+     */
+    private static String getSchemaHash( List<Column> columns ){
+        final StringBuilder sb = new StringBuilder();
+        for ( Column column : columns ){
+            sb.append( column.name ).append(' ').append( column.getH2Type() ).append('\n');
+        }
+        return Util.md5Java( sb.toString() );
+    }
+
+    /**
+     * One filter per line, the conditions of a filter separated by tab. Line breaks, tabs and backslashes in the conditions are escaped.
+     */
+    static String encodeFilters( List<Set<String>> filters ){
+        final StringBuilder sb = new StringBuilder();
+        for ( Set<String> filter : filters ){
+            if ( sb.length() > 0 ) sb.append('\n');
+            boolean first = true;
+            for ( String condition : filter ){
+                if ( !first ) sb.append('\t');
+                sb.append( condition.replace("\\", "\\\\").replace("\n", "\\n").replace("\t", "\\t") );
+                first = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    static List<Set<String>> decodeFilters( String value ){
+        final List<Set<String>> filters = new ArrayList<>();
+        if ( value == null ){
+            filters.add( Collections.emptySet() );
+            return filters;
+        }
+        for ( String line : value.split("\n", -1 ) ){
+            final Set<String> filter = new LinkedHashSet<>();
+            if ( !line.isEmpty() ){
+                for ( String condition : line.split("\t", -1 ) ){
+                    filter.add( unescape( condition ));
+                }
+            }
+            filters.add( filter.isEmpty() ? Collections.emptySet() : filter );
+        }
+        return filters;
+    }
+
+    private static String unescape( String value ){
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < value.length(); i++ ){
+            char c = value.charAt(i);
+            if ( c == '\\' && i + 1 < value.length() ){
+                c = value.charAt( ++i );
+                if ( c == 'n' ) c = '\n';
+                else if ( c == 't' ) c = '\t';
+            }
+            sb.append( c );
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split a Salesforce object into Id ranges, so the ranges can be queried in parallel.
+ * The bounds are interpolated between the lowest and the highest Id. The Id characters after their common prefix
+ * are read as a base-62 number, ordered 0-9, A-Z, a-z like Salesforce orders the Ids.
+ * Records are not spread evenly over the Ids, so more ranges than threads give a better balance.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class IdRanges {
+
+    // SMALLER TABLES ARE NOT WORTH SPLITTING
+    public static final int MIN_ROWS_PER_RANGE = 10000;
+    private static final String BASE62_DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final String CHECKSUM_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ012345";
+    private static final BigInteger BASE = BigInteger.valueOf( 62 );
+
+    /**
+     * SOQL conditions covering all rows of the table, one for each range. The first and the last range are open,
+     * so records created meanwhile are included. Returns an empty list if the table is too small to be split.
+     * The number of rows is counted if rows is negative.
+     */
+    public static List<String> getConditions( PartnerConnection partnerConnection, Table table, int ranges, int rows ) throws ConnectionException {
+        final List<String> conditions = new ArrayList<>();
+        if ( rows < 0 ){
+            rows = partnerConnection.query("SELECT COUNT() FROM " + table.name ).getSize();
+        }
+        ranges = Math.min( ranges, rows / MIN_ROWS_PER_RANGE );
+        if ( ranges < 2 ) return conditions;
+        final String minId = getFirstId( partnerConnection, table, "ASC");
+        final String maxId = getFirstId( partnerConnection, table, "DESC");
+        if ( minId == null || maxId == null ) return conditions;
+        final List<String> bounds = getBounds( minId.substring( 0, 15 ), maxId.substring( 0, 15 ), ranges );
+        if ( bounds.isEmpty() ) return conditions;
+        conditions.add("Id < '" + bounds.get(0) + "'");
+        for ( int i = 1; i < bounds.size(); i++ ){
+            conditions.add("Id >= '" + bounds.get(i - 1) + "' AND Id < '" + bounds.get(i) + "'");
+        }
+        conditions.add("Id >= '" + bounds.get( bounds.size() - 1 ) + "'");
+        return conditions;
+    }
+
+    private static String getFirstId( PartnerConnection partnerConnection, Table table, String order ) throws ConnectionException {
+        final QueryResult result = partnerConnection.query("SELECT Id FROM " + table.name + " ORDER BY Id " + order + " LIMIT 1");
+        return result.getRecords() != null && result.getRecords().length > 0 && result.getRecords()[0].getId() != null &&
+                result.getRecords()[0].getId().length() >= 15 ? result.getRecords()[0].getId() : null;
+    }
+
+    /**
+     * Ids splitting the interval between minId and maxId into equal parts, as 18 characters Ids.
+     */
+    static List<String> getBounds( String minId, String maxId, int ranges ){
+        int prefixLength = 0;
+        while ( prefixLength < minId.length() && minId.charAt( prefixLength ) == maxId.charAt( prefixLength )) prefixLength++;
+        final String prefix = minId.substring( 0, prefixLength );
+        final int width = minId.length() - prefixLength;
+        final List<String> bounds = new ArrayList<>();
+        if ( width == 0 ) return bounds;
+        final BigInteger low = fromBase62( minId.substring( prefixLength ));
+        final BigInteger high = fromBase62( maxId.substring( prefixLength ));
+        final BigInteger step = high.subtract( low );
+        for ( int i = 1; i < ranges; i++ ){
+            final String bound = toEighteenCharId( prefix + toBase62( low.add( step.multiply( BigInteger.valueOf( i )).divide( BigInteger.valueOf( ranges ))), width ));
+            if ( bounds.isEmpty() || !bounds.get( bounds.size() - 1 ).equals( bound )){
+                bounds.add( bound );
+            }
+        }
+        return bounds;
+    }
+
+    private static BigInteger fromBase62( String value ){
+        BigInteger number = BigInteger.ZERO;
+        for ( char c : value.toCharArray() ){
+            number = number.multiply( BASE ).add( BigInteger.valueOf( BASE62_DIGITS.indexOf( c )));
+        }
+        return number;
+    }
+
+    private static String toBase62( BigInteger number, int width ){
+        final char[] chars = new char[ width ];
+        for ( int i = width - 1; i >= 0; i-- ){
+            final BigInteger[] division = number.divideAndRemainder( BASE );
+            chars[i] = BASE62_DIGITS.charAt( division[1].intValue() );
+            number = division[0];
+        }
+        return new String( chars );
+    }
+
+    /**
+     * Append the case-checksum to a 15 characters Id.
+     */
+    static String toEighteenCharId( String id ){
+        final StringBuilder sb = new StringBuilder( id );
+        for ( int block = 0; block < 3; block++ ){
+            int flags = 0;
+            for ( int i = 0; i < 5; i++ ){
+                final char c = id.charAt( block * 5 + i );
+                if ( c >= 'A' && c <= 'Z' ) flags |= 1 << i;
+            }
+            sb.append( CHECKSUM_CHARS.charAt( flags ));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.bind.XmlObject;
+import com.wisecoders.dbschema.salesforce.schema.Column;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fetch the pages of a SOQL query in a background thread, using query() and queryMore().
+ * While the caller decodes and writes one page into H2, the next pages are already requested from Salesforce.
+ * The pages are passed through a bounded queue, so at most 'capacity' pages are kept in memory.
+ * With capacity 0 there is no background thread: each page is requested when the caller asks for it.
+ * The page size is requested with the QueryOptions header. If not configured, it is estimated from the columns and
+ * adapted after each page from the received row width: narrow objects use 2000 rows per page, wide objects less.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class PageFetcher implements Runnable {
+
+    private static final QueryResult END_OF_PAGES = new QueryResult();
+    public static final int MIN_BATCH_SIZE = 200, MAX_BATCH_SIZE = 2000;
+    // APPROXIMATE TEXT SIZE OF ONE PAGE
+    private static final long TARGET_PAGE_CHARS = 4_000_000;
+    // PAGES SLOWER THAN THIS ARE MADE SMALLER, TO STAY AWAY FROM THE READ TIMEOUT
+    private static final long SLOW_PAGE_MILLIS = 30_000;
+    private static final int SAMPLE_RECORDS = 50;
+
+    private final PartnerConnection partnerConnection;
+    private final String soql;
+    private final BlockingQueue<QueryResult> queue;
+    private final Thread thread;
+    // USED WITHOUT BACKGROUND THREAD
+    private String queryLocator;
+    private boolean started = false, done = false;
+    private volatile Throwable error;
+    private volatile boolean closed = false;
+    private final boolean adaptive;
+    private volatile int batchSize;
+
+    /**
+     * Use batchSize 0 to choose the page size from the columns and adapt it to the received rows.
+     * Use capacity 0 to fetch the pages only on request.
+     */
+    public PageFetcher(PartnerConnection partnerConnection, String soql, int capacity, List<Column> columns, int batchSize ){
+        this.partnerConnection = partnerConnection;
+        this.soql = soql;
+        this.adaptive = batchSize <= 0;
+        this.batchSize = adaptive ? estimateBatchSize( columns ) : toValidBatchSize( batchSize );
+        if ( capacity > 0 ){
+            this.queue = new ArrayBlockingQueue<>( capacity );
+            this.thread = new Thread( this, "Salesforce fetch " + soql );
+            this.thread.setDaemon( true );
+            this.thread.start();
+        } else {
+            this.queue = null;
+            this.thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            QueryResult queryResult = null;
+            do {
+                queryResult = fetchPage( queryResult == null ? null : queryResult.getQueryLocator() );
+                queue.put( queryResult );
+            } while (!queryResult.isDone() && !closed );
+        } catch ( InterruptedException ex ){
+            Thread.currentThread().interrupt();
+        } catch ( Throwable ex ){
+            error = ex;
+        }
+        if ( !closed ){
+            try {
+                queue.put( END_OF_PAGES );
+            } catch ( InterruptedException ex ){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The QueryOptions header is kept in the PartnerConnection, which may be shared with other fetchers.
+     * Setting the header and calling Salesforce is done under a lock on the connection, so each call uses its own page size.
+     */
+    private QueryResult fetchPage( String queryLocator ) throws ConnectionException {
+        final QueryResult queryResult;
+        final long millis;
+        synchronized ( partnerConnection ){
+            partnerConnection.setQueryOptions( batchSize );
+            final long start = System.currentTimeMillis();
+            queryResult = queryLocator == null ? partnerConnection.query(soql) : partnerConnection.queryMore(queryLocator);
+            millis = System.currentTimeMillis() - start;
+        }
+        if ( adaptive ){
+            adaptBatchSize( queryResult, millis );
+        }
+        return queryResult;
+    }
+
+    /**
+     * The page size requested for the last page.
+     */
+    public int getBatchSize(){
+        return batchSize;
+    }
+
+    private static int estimateBatchSize( List<Column> columns ){
+        long rowChars = 1;
+        for ( Column column : columns ){
+            // TAGS AROUND THE VALUE AND THE VALUE, WITH LONG TEXT FIELDS USUALLY MUCH SHORTER THAN THEIR MAXIMUM LENGTH
+            rowChars += 2 * column.name.length() + 5 + ( column.length > 0 ? Math.min( column.length, 1000 ) : 25 );
+        }
+        return toValidBatchSize( TARGET_PAGE_CHARS / rowChars );
+    }
+
+    private void adaptBatchSize( QueryResult queryResult, long millis ){
+        final SObject[] records = queryResult.getRecords();
+        if ( records == null || records.length == 0 ) return;
+        final int sampleSize = Math.min( records.length, SAMPLE_RECORDS );
+        long sampleChars = 1;
+        for ( int i = 0; i < sampleSize; i++ ){
+            final Iterator<XmlObject> fields = records[i].getChildren();
+            while ( fields.hasNext() ){
+                final XmlObject field = fields.next();
+                sampleChars += 2 * field.getName().getLocalPart().length() + 5 + ( field.getValue() != null ? field.getValue().toString().length() : 0 );
+            }
+        }
+        long size = TARGET_PAGE_CHARS * sampleSize / sampleChars;
+        if ( millis > SLOW_PAGE_MILLIS ){
+            size = Math.min( size, batchSize / 2 );
+        }
+        batchSize = toValidBatchSize( size );
+    }
+
+    private static int toValidBatchSize( long size ){
+        return (int)Math.max( MIN_BATCH_SIZE, Math.min( MAX_BATCH_SIZE, size ));
+    }
+
+    /**
+     * Wait for the next page. Returns null after the last page. Errors from the fetching thread are thrown here.
+     */
+    public QueryResult nextPage() throws SQLException {
+        if ( thread == null ){
+            return fetchNextPage();
+        }
+        final QueryResult queryResult;
+        try {
+            queryResult = queue.take();
+        } catch ( InterruptedException ex ){
+            Thread.currentThread().interrupt();
+            throw new SQLException( "Interrupted while waiting for Salesforce data", ex );
+        }
+        if ( queryResult == END_OF_PAGES ){
+            queue.offer( END_OF_PAGES );
+            if ( error != null ){
+                throw new SQLException( error.getMessage(), error );
+            }
+            return null;
+        }
+        return queryResult;
+    }
+
+    private QueryResult fetchNextPage() throws SQLException {
+        if ( done || closed ){
+            return null;
+        }
+        try {
+            final QueryResult queryResult = fetchPage( started ? queryLocator : null );
+            started = true;
+            done = queryResult.isDone();
+            queryLocator = queryResult.getQueryLocator();
+            return queryResult;
+        } catch ( ConnectionException ex ){
+            throw new SQLException( ex.getMessage(), ex );
+        }
+    }
+
+    /**
+     * Stop fetching further pages, for example if writing into H2 failed.
+     */
+    public void close(){
+        if ( !closed ) {
+            closed = true;
+            if ( thread != null ) {
+                thread.interrupt();
+                queue.clear();
+            }
+        }
+    }
+}
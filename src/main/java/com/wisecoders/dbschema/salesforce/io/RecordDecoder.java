@@ -0,0 +1,88 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import com.sforce.ws.bind.XmlObject;
+import com.wisecoders.dbschema.salesforce.schema.Column;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read the field values of partner API records into an array ordered like the given columns.
+ * All records of a query have the same elements in the same order, so the position of each element is mapped once
+ * to the column index, and each record is read in a single pass over its elements, without lookups by name.
+ * The service elements 'type', 'done', 'queryLocator' and 'size' and the unselected fields are skipped.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+class RecordDecoder {
+
+    private static final String[] SERVICE_ELEMENTS = { "type", "done", "queryLocator", "size" };
+
+    private final Map<String,Integer> columnIndexes = new HashMap<>();
+    // FOR A COLUMN LISTED MORE TIMES, THE INDEX OF ITS FIRST OCCURRENCE
+    private final int[] repeatedColumns;
+    private String[] elementNames = new String[0];
+    private int[] elementColumns = new int[0];
+
+    RecordDecoder( List<Column> columns ){
+        final int[] repeatedColumns = new int[ columns.size() ];
+        boolean hasRepeatedColumns = false;
+        for ( int i = 0; i < columns.size(); i++ ){
+            final Integer firstIndex = columnIndexes.putIfAbsent( columns.get(i).name, i );
+            repeatedColumns[i] = firstIndex != null ? firstIndex : -1;
+            hasRepeatedColumns |= firstIndex != null;
+        }
+        this.repeatedColumns = hasRepeatedColumns ? repeatedColumns : null;
+        for ( String name : SERVICE_ELEMENTS ){
+            columnIndexes.put( name, -1 );
+        }
+    }
+
+    /**
+     * Store the record values into the array, at the index of their column. Columns missing in the record are set to null.
+     */
+    void decode( XmlObject record, Object[] values ){
+        Arrays.fill( values, null );
+        final Iterator<XmlObject> children = record.getChildren();
+        int position = 0;
+        while ( children.hasNext() ){
+            final XmlObject child = children.next();
+            final String name = child.getName().getLocalPart();
+            if ( position >= elementNames.length || !elementNames[ position ].equals( name )){
+                // FIRST RECORD OR A RECORD WITH OTHER ELEMENTS
+                compile( record );
+                decode( record, values );
+                return;
+            }
+            final int columnIndex = elementColumns[ position++ ];
+            if ( columnIndex > -1 ){
+                values[ columnIndex ] = child.getValue();
+            }
+        }
+        if ( repeatedColumns != null ){
+            for ( int i = 0; i < repeatedColumns.length; i++ ){
+                if ( repeatedColumns[i] > -1 ) values[i] = values[ repeatedColumns[i] ];
+            }
+        }
+    }
+
+    private void compile( XmlObject record ){
+        int count = 0;
+        for ( Iterator<XmlObject> children = record.getChildren(); children.hasNext(); children.next() ){
+            count++;
+        }
+        elementNames = new String[ count ];
+        elementColumns = new int[ count ];
+        final Iterator<XmlObject> children = record.getChildren();
+        for ( int position = 0; position < count; position++ ){
+            final String name = children.next().getName().getLocalPart();
+            elementNames[ position ] = name;
+            // THE PARTNER API RETURNS THE ID ELEMENT TWICE, THE LAST ONE HOLDS THE SELECTED VALUE
+            elementColumns[ position ] = columnIndexes.getOrDefault( name, -1 );
+        }
+    }
+}
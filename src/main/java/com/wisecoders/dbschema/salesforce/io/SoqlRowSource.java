@@ -0,0 +1,195 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.bind.XmlObject;
+import com.wisecoders.dbschema.salesforce.schema.Column;
+import com.wisecoders.dbschema.salesforce.sql.SoqlQuery;
+import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Rows of a SOQL query, read page by page while the result set is consumed, without caching them in H2.
+ * The values are converted to the same Java types used for the H2 cache.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class SoqlRowSource implements SimpleRowSource {
+
+    private final PageFetcher fetcher;
+    private final BiConsumer<XmlObject,Object[]> decoder;
+    private final int[] javaTypes;
+    private SObject[] records;
+    private int recordIdx = 0;
+
+    private SoqlRowSource( PageFetcher fetcher, BiConsumer<XmlObject,Object[]> decoder, int[] javaTypes ){
+        this.fetcher = fetcher;
+        this.decoder = decoder;
+        this.javaTypes = javaTypes;
+    }
+
+    /**
+     * Forward-only result set over the SOQL query. The columns may repeat, the labels are the names shown in the result.
+     */
+    public static ResultSet createResultSet( PartnerConnection partnerConnection, String soql, List<Column> columns, List<String> labels, int pageQueue, int batchSize ){
+        final int[] javaTypes = new int[ columns.size() ];
+        for ( int i = 0; i < javaTypes.length; i++ ){
+            javaTypes[i] = columns.get(i).getJavaType();
+        }
+        final SimpleResultSet resultSet = new SimpleResultSet( new SoqlRowSource( new PageFetcher( partnerConnection, soql, pageQueue, columns, batchSize ),
+                new RecordDecoder( columns )::decode, javaTypes ));
+        for ( int i = 0; i < columns.size(); i++ ){
+            final Column column = columns.get(i);
+            final int h2SqlType = TransferWriter.getH2SqlType( column.getJavaType() );
+            resultSet.addColumn( labels.get(i), h2SqlType == Types.TIMESTAMP_WITH_TIMEZONE ? Types.TIMESTAMP : h2SqlType,
+                    column.digits > 0 ? column.digits : column.length, column.scale );
+        }
+        return resultSet;
+    }
+
+    /**
+     * Result set of a SOQL query with the columns described by the query fields. The first page is fetched here,
+     * so errors in the SOQL are reported when the statement is executed. With pageQueue 0 the next pages are fetched
+     * only when the rows are read.
+     */
+    public static ResultSet createResultSet( PartnerConnection partnerConnection, SoqlQuery query, int pageQueue, int batchSize ) throws SQLException {
+        final SimpleResultSet resultSet;
+        int count = 0;
+        if ( query.countOnly ){
+            resultSet = new SimpleResultSet();
+            try {
+                count = partnerConnection.query( query.soql ).getSize();
+            } catch ( ConnectionException ex ){
+                throw new SQLException( ex.getMessage() + ": " + query.soql, ex );
+            }
+        } else {
+            final List<Column> columns = new ArrayList<>();
+            final int[] javaTypes = new int[ query.fields.size() ];
+            for ( int i = 0; i < javaTypes.length; i++ ){
+                final SoqlQuery.Field field = query.fields.get(i);
+                if ( field.column != null ) columns.add( field.column );
+                javaTypes[i] = field.javaType;
+            }
+            final SoqlRowSource rowSource = new SoqlRowSource( new PageFetcher( partnerConnection, query.soql, pageQueue, columns, batchSize ),
+                    new PathDecoder( query.fields )::decode, javaTypes );
+            rowSource.fetchFirstPage();
+            resultSet = new SimpleResultSet( rowSource );
+        }
+        for ( SoqlQuery.Field field : query.fields ){
+            final Column column = field.column;
+            final int h2SqlType = TransferWriter.getH2SqlType( field.javaType );
+            resultSet.addColumn( field.label, h2SqlType == Types.TIMESTAMP_WITH_TIMEZONE ? Types.TIMESTAMP : h2SqlType,
+                    column == null ? 0 : column.digits > 0 ? column.digits : column.length, column == null ? 0 : column.scale );
+        }
+        if ( query.countOnly ){
+            resultSet.addRow( TransferWriter.convert( String.valueOf( count ), query.fields.get(0).javaType ));
+        }
+        return resultSet;
+    }
+
+    private void fetchFirstPage() throws SQLException {
+        final QueryResult page = fetcher.nextPage();
+        records = page != null ? page.getRecords() : new SObject[0];
+    }
+
+    @Override
+    public Object[] readRow() throws SQLException {
+        while ( records == null || recordIdx >= records.length ){
+            final QueryResult page = fetcher.nextPage();
+            if ( page == null ) return null;
+            records = page.getRecords();
+            recordIdx = 0;
+        }
+        final Object[] row = new Object[ javaTypes.length ];
+        decoder.accept( records[ recordIdx++ ], row );
+        for ( int i = 0; i < javaTypes.length; i++ ){
+            if ( row[i] != null ) row[i] = toJdbcValue( TransferWriter.convert( row[i], javaTypes[i] ));
+        }
+        return row;
+    }
+
+    /**
+     * SimpleResultSet returns dates and times only as java.sql types.
+     */
+    private static Object toJdbcValue( Object value ){
+        if ( value instanceof LocalDate ) return Date.valueOf( (LocalDate)value );
+        if ( value instanceof LocalTime ) return Time.valueOf( (LocalTime)value );
+        if ( value instanceof OffsetDateTime ) return Timestamp.from( ((OffsetDateTime)value).toInstant() );
+        return value;
+    }
+
+    /**
+     * Read the values by their element path, for example Account, Owner, Name for Account.Owner.Name.
+     * The paths are merged in a tree, so each record is read in one pass over its elements.
+     */
+    static class PathDecoder {
+
+        private static class Node {
+            final Map<String,Node> children = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+            final List<Integer> fieldIndexes = new ArrayList<>();
+        }
+
+        private final Node root = new Node();
+
+        PathDecoder( List<SoqlQuery.Field> fields ){
+            for ( int i = 0; i < fields.size(); i++ ){
+                Node node = root;
+                for ( String name : fields.get(i).path ){
+                    node = node.children.computeIfAbsent( name, key -> new Node() );
+                }
+                node.fieldIndexes.add( i );
+            }
+        }
+
+        void decode( XmlObject record, Object[] values ){
+            Arrays.fill( values, null );
+            decode( root, record, values );
+        }
+
+        private void decode( Node node, XmlObject xmlObject, Object[] values ){
+            for ( Iterator<XmlObject> children = xmlObject.getChildren(); children.hasNext(); ){
+                final XmlObject child = children.next();
+                final Node childNode = node.children.get( child.getName().getLocalPart() );
+                if ( childNode != null ){
+                    // THE PARTNER API RETURNS THE ID ELEMENT TWICE, THE LAST ONE HOLDS THE SELECTED VALUE
+                    for ( int fieldIndex : childNode.fieldIndexes ){
+                        values[ fieldIndex ] = child.getValue();
+                    }
+                    if ( !childNode.children.isEmpty() ){
+                        decode( childNode, child, values );
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        fetcher.close();
+    }
+
+    @Override
+    public void reset() throws SQLException {
+        throw new SQLException("The result set is forward only");
+    }
+}
@@ -1,21 +1,37 @@
 package com.wisecoders.dbschema.salesforce.io;
 
+import com.sforce.soap.partner.DeletedRecord;
+import com.sforce.soap.partner.GetDeletedResult;
+import com.sforce.soap.partner.GetUpdatedResult;
+import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.soap.partner.QueryResult;
 import com.sforce.soap.partner.sobject.SObject;
-import com.sforce.ws.bind.XmlObject;
+import com.sforce.ws.ConnectionException;
 import com.wisecoders.dbschema.salesforce.SalesforceConnection;
+import com.wisecoders.dbschema.salesforce.schema.Column;
 import com.wisecoders.dbschema.salesforce.schema.Table;
-import org.apache.commons.collections4.IteratorUtils;
+import org.h2.jdbc.JdbcConnection;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
 
@@ -25,104 +41,676 @@ import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
  */
 public class TransferReader {
 
+    // IDS PER SOQL 'IN' CONDITION, KEEPING THE STATEMENT WELL BELOW THE SOQL LENGTH LIMIT
+    private static final int ID_BATCH_SIZE = 500;
+    // SALESFORCE REJECTS LONGER SOQL STATEMENTS
+    private static final int MAX_SOQL_LENGTH = 100000;
+    // REQUESTS FOR CHUNKS RUNNING AT THE SAME TIME, FOR ALL TABLES AND CONNECTIONS
+    private static final int MAX_CONCURRENT_CHUNKS = 10;
+    private static final Semaphore CONCURRENT_CHUNKS = new Semaphore( MAX_CONCURRENT_CHUNKS );
+    // SECONDS TO WAIT FOR A TABLE LOADED BY ANOTHER CONNECTION
+    private static final int DEFAULT_LOAD_TIMEOUT = 3600;
+
     private final SalesforceConnection salesforceConnection;
+    private final PartnerConnection partnerConnection;
+    private final Connection h2Connection;
 
     public TransferReader(SalesforceConnection salesforceConnection) {
+        this( salesforceConnection, salesforceConnection.partnerConnection, salesforceConnection.h2Connection );
+    }
+
+    /**
+     * Reader using its own Salesforce connection and H2 session, so more tables can be transferred in parallel.
+     */
+    public TransferReader(SalesforceConnection salesforceConnection, PartnerConnection partnerConnection, Connection h2Connection) {
         this.salesforceConnection = salesforceConnection;
+        this.partnerConnection = partnerConnection;
+        this.h2Connection = h2Connection;
     }
 
     public void transferSchema() throws SQLException {
         LOGGER.info("Transfer schema..."  );
         salesforceConnection.ensureColumnsAreLoaded();
-        for ( Table table : salesforceConnection.getSchemaDef().tables ) {
-            TransferWriter writer = new TransferWriter(table, salesforceConnection);
+        for ( Table table : salesforceConnection.getSchemaDef().getTables() ) {
+            TransferWriter writer = new TransferWriter(table, table.columns, salesforceConnection, h2Connection);
             writer.createTable();
         }
     }
 
+    /**
+     * Load all tables with all columns. With sync=incremental the tables already in the cache receive only the changes.
+     */
     public void transferAllData() throws SQLException {
         LOGGER.info("Transfer all data..."  );
         salesforceConnection.ensureColumnsAreLoaded();
-        for ( Table table : salesforceConnection.getSchemaDef().tables ) {
-            transferData( table );
+        for ( Table table : salesforceConnection.getSchemaDef().getTables() ) {
+            try {
+                if ( !isIncrementalSyncPossible( table ) || !syncData( table )){
+                    transferData( table );
+                }
+            } catch ( SQLException ex ){
+                // SOME OBJECTS CANNOT BE QUERIED WITHOUT FILTERS. CACHE THE OTHER TABLES.
+                LOGGER.log(Level.SEVERE, "Error transferring data", ex );
+            }
+        }
+    }
+
+    /**
+     * With sync=incremental, transfer the changes of a cached table, then load its missing columns and rows, under the load lock.
+     * Returns false if the table has to be loaded again.
+     */
+    private boolean syncData( Table table ) throws SQLException {
+        lockForLoad( table );
+        try {
+            // THE TABLE MAY HAVE BEEN CLEANED OR LOADED BY ANOTHER CONNECTION MEANWHILE
+            if ( !isIncrementalSyncPossible( table ) || !transferChanges( table )){
+                return false;
+            }
+            loadData( table, table.columns, Collections.singletonList( Collections.emptySet() ));
+            saveState( table );
+            return true;
+        } catch ( SQLException | RuntimeException ex ){
+            table.setLoadFailed( ex );
+            throw ex;
+        } finally {
+            table.loadLock.unlock();
+        }
+    }
+
+    /**
+     * Bring a cached table up to date. With sync=incremental only the rows modified or deleted since the last load are transferred,
+     * otherwise the table is loaded again into a replacement table. The cached table answers the queries until it is replaced.
+     */
+    public void refreshData( Table table ) throws SQLException {
+        table.loadLock.lock();
+        try {
+            if ( !table.isLoaded() ){
+                return;
+            }
+            if ( isIncrementalSyncPossible( table ) && transferChanges( table )){
+                saveState( table );
+                return;
+            }
+        } finally {
+            table.loadLock.unlock();
+        }
+        replaceTable( table );
+    }
+
+    /**
+     * Load the cached columns of the rows matching the loaded filters into a replacement table, then replace the cached table with it.
+     * If the transfer fails, the cached table is kept.
+     */
+    private void replaceTable( Table table ) throws SQLException {
+        final List<Column> columns = table.getCachedColumns();
+        final List<Set<String>> filters = table.getLoadedFilters();
+        final List<String> whereClauses = table.getLoadedFiltersSoql( getMaxWhereLength( table, columns ));
+        final Calendar syncTimestamp = readSyncTimestamp( table );
+        final TransferWriter writer = new TransferWriter( table, columns, salesforceConnection, h2Connection );
+        LOGGER.info("Refresh '"  + table + "' data..." );
+        writer.createReplacementTable();
+        try {
+            if ( whereClauses == null ){
+                transferRecords( table, columns, writer, null );
+                writer.createIndexes();
+            } else if ( table.isQueriable && !columns.isEmpty() ){
+                // THE FILTERS MAY SELECT THE SAME ROWS
+                writer.mergeRows();
+                for ( String whereClause : whereClauses ){
+                    copyRecords( partnerConnection, table, "SELECT " + getColumnList( columns ) + " FROM " + table + " WHERE " + whereClause, columns, writer );
+                }
+                writer.createIndexes();
+            }
+        } catch ( Exception ex ){
+            writer.close();
+            writer.dropTable();
+            throw ex instanceof SQLException ? (SQLException)ex : new SQLException( "Error refreshing '" + table + "'", ex );
+        }
+        table.loadLock.lock();
+        try {
+            if ( !table.isLoaded() ){
+                // THE CACHE WAS CLEANED MEANWHILE
+                writer.dropTable();
+                return;
+            }
+            // CHANGES DONE MEANWHILE BY OTHER LOADS ARE DROPPED TOGETHER WITH THE CACHED TABLE, THE TABLE STATE IS THE ONE READ ABOVE
+            writer.replaceCachedTable();
+            table.setRefreshed( columns, filters );
+            table.setSyncTimestamp( syncTimestamp );
+            saveState( table );
+        } finally {
+            table.loadLock.unlock();
         }
     }
 
+    /**
+     * Save the table state in the H2 database, so the next connections use the cached data.
+     */
+    private void saveState( Table table ){
+        try {
+            CacheState.save( h2Connection, table, salesforceConnection.getIntParameter("cachesize", 0 ) > 0 );
+        } catch ( SQLException ex ){
+            LOGGER.log(Level.WARNING, "Cannot save the cache state of '" + table + "'", ex );
+        }
+    }
+
+    /**
+     * Drop and load the table again, with all columns.
+     */
     public void transferData( Table table ) throws SQLException {
-        TransferWriter writer = new TransferWriter( table, salesforceConnection);
         salesforceConnection.ensureColumnsAreLoaded();
-        LOGGER.info("Transfer '"  + table + "' data..." );
-        Thread.dumpStack();
+        lockForLoad( table );
+        try {
+            transferTable( table, table.columns );
+            saveState( table );
+        } catch ( SQLException | RuntimeException ex ){
+            table.setLoadFailed( ex );
+            throw ex;
+        } finally {
+            table.loadLock.unlock();
+        }
+    }
+
+    /**
+     * Load the given columns. If the table is not in the cache it is created, otherwise only the missing columns are added.
+     */
+    public void transferData( Table table, List<Column> columns ) throws SQLException {
+        transferData( table, columns, Collections.emptySet() );
+    }
+
+    /**
+     * Load the given columns for the rows matching the SOQL filter, a set of conditions joined by AND.
+     * If the table is in the cache, the missing columns are added to the loaded rows and the rows matching the filter are merged.
+     */
+    public void transferData( Table table, List<Column> columns, Set<String> filter ) throws SQLException {
+        transferData( table, columns, Collections.singletonList( filter ));
+    }
+
+    /**
+     * Load the given columns for the rows matching any of the SOQL filters, in one load: the indexes and statistics are built once.
+     */
+    private void transferData( Table table, List<Column> columns, List<Set<String>> filters ) throws SQLException {
+        salesforceConnection.ensureColumnsAreLoaded();
+        lockForLoad( table );
+        try {
+            loadData( table, columns, filters );
+            saveState( table );
+        } catch ( SQLException | RuntimeException ex ){
+            table.setLoadFailed( ex );
+            throw ex;
+        } finally {
+            table.loadLock.unlock();
+        }
+    }
+
+    /**
+     * Load the given columns for the rows matching any of the filters. The caller holds the load lock.
+     */
+    private void loadData( Table table, List<Column> columns, List<Set<String>> filters ) throws SQLException {
+        // A LOAD DONE MEANWHILE BY ANOTHER CONNECTION MAY ALREADY HAVE THE COLUMNS AND ROWS
+        if ( table.isLoaded() ){
+            transferMissingColumns( table, columns );
+            final List<Set<String>> missingFilters = new ArrayList<>();
+            for ( Set<String> filter : filters ){
+                if ( !table.isFilterLoaded( filter )) missingFilters.add( filter );
+            }
+            if ( !missingFilters.isEmpty() ){
+                transferFilteredRows( table, missingFilters );
+            }
+        } else {
+            transferTable( table, columns, filters );
+        }
+    }
+
+    /**
+     * Lock the table for loading. Connections and threads needing a table which is being loaded wait for that load, at most
+     * 'loadtimeout' seconds, then use its result, so the table is loaded only once. If that load fails, they fail with the same error.
+     */
+    private void lockForLoad( Table table ) throws SQLException {
+        final long failedLoads = table.getFailedLoads();
+        if ( table.loadLock.tryLock() ){
+            return;
+        }
+        final int timeout = salesforceConnection.getIntParameter("loadtimeout", DEFAULT_LOAD_TIMEOUT );
+        LOGGER.info("Wait for '" + table + "' to be loaded by another connection...");
+        table.loadWaits.incrementAndGet();
+        try {
+            if ( !table.loadLock.tryLock( timeout, TimeUnit.SECONDS )){
+                throw new SQLException("Timeout after " + timeout + " seconds waiting for '" + table + "' to be loaded by another connection. Increase 'loadtimeout' to wait longer.");
+            }
+        } catch ( InterruptedException ex ){
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for '" + table + "' to be loaded by another connection", ex );
+        }
+        if ( table.getFailedLoads() != failedLoads ){
+            table.loadLock.unlock();
+            final Exception failure = table.getLoadFailure();
+            throw new SQLException("Loading '" + table + "' failed in another connection: " + failure.getMessage(), failure );
+        }
+    }
+
+    /**
+     * Load the rows whose key column is one of the given values, for example the Tasks of a few Accounts. The values are
+     * sent as IN conditions, in as many queries as the SOQL length limit requires. The loaded rows are recorded under
+     * the semi-join filter, which selects the same rows, so the same query does not read the keys and load the rows again.
+     */
+    public void transferData( Table table, List<Column> columns, Set<String> filter, Column keyColumn, Collection<String> keys, Set<String> semiJoinFilter ) throws SQLException {
+        final int maxLength = getMaxWhereLength( table, columns ) - String.join(" AND ", filter ).length() - 5;
+        final List<String> inConditions = getInConditions( keyColumn.name, keys, maxLength );
+        if ( inConditions.isEmpty() ){
+            // NO KEYS, NO ROWS
+            inConditions.add("Id = null");
+        }
+        LOGGER.info("Transfer '" + table + "' rows for " + keys.size() + " " + keyColumn.name + " values in " + inConditions.size() + " queries" );
+        final List<Set<String>> keysFilters = new ArrayList<>();
+        for ( String inCondition : inConditions ){
+            final Set<String> keysFilter = new LinkedHashSet<>( filter );
+            keysFilter.add( inCondition );
+            keysFilters.add( keysFilter );
+        }
+        salesforceConnection.ensureColumnsAreLoaded();
+        lockForLoad( table );
+        try {
+            loadData( table, columns, keysFilters );
+            table.replaceLoadedFilters( keysFilters, semiJoinFilter );
+            saveState( table );
+        } catch ( SQLException | RuntimeException ex ){
+            table.setLoadFailed( ex );
+            throw ex;
+        } finally {
+            table.loadLock.unlock();
+        }
+    }
+
+    /**
+     * The distinct values of the column in the rows matching the SOQL filter, or null if there are more than maxKeys.
+     */
+    public Set<String> readKeys( Table table, Column column, Set<String> filter, int maxKeys ) throws SQLException {
+        final List<Column> columns = Collections.singletonList( column );
+        final String sql = "SELECT " + column.name + " FROM " + table + ( filter.isEmpty() ? "" : " WHERE " + String.join(" AND ", filter ));
+        final PageFetcher fetcher = new PageFetcher( partnerConnection, sql, 0, columns, 0 );
+        final RecordDecoder decoder = new RecordDecoder( columns );
+        final Object[] values = new Object[1];
+        final Set<String> keys = new TreeSet<>();
+        try {
+            QueryResult page;
+            while ( ( page = fetcher.nextPage() ) != null ){
+                for ( SObject record : page.getRecords() ){
+                    decoder.decode( record, values );
+                    if ( values[0] != null ) keys.add( values[0].toString() );
+                    if ( keys.size() > maxKeys ) return null;
+                }
+            }
+        } finally {
+            fetcher.close();
+        }
+        return keys;
+    }
+
+    /**
+     * Conditions 'column IN (...)' for all values, each one up to the given length.
+     */
+    static List<String> getInConditions( String columnName, Collection<String> values, int maxLength ){
+        final List<String> conditions = new ArrayList<>();
+        final String prefix = columnName + " IN (";
+        final StringBuilder sb = new StringBuilder();
+        for ( String value : values ){
+            if ( sb.length() > 0 && prefix.length() + sb.length() + value.length() + 5 > maxLength ){
+                conditions.add( prefix + sb + ")" );
+                sb.setLength( 0 );
+            }
+            if ( sb.length() > 0 ) sb.append(", ");
+            sb.append("'").append( value ).append("'");
+        }
+        if ( sb.length() > 0 ) conditions.add( prefix + sb + ")" );
+        return conditions;
+    }
+
+    /**
+     * The length left for the WHERE clause of a query selecting the columns.
+     */
+    private static int getMaxWhereLength( Table table, List<Column> columns ){
+        return MAX_SOQL_LENGTH - ( "SELECT " + getColumnList( columns ) + " FROM " + table + " WHERE " ).length();
+    }
+
+    private void transferTable( Table table, List<Column> columns ) throws SQLException {
+        transferTable( table, columns, Collections.singletonList( Collections.emptySet() ));
+    }
+
+    /**
+     * Load the rows matching any of the filters into a new table. The indexes are created after the last filter is loaded.
+     */
+    private void transferTable( Table table, List<Column> columns, List<Set<String>> filters ) throws SQLException {
+        TransferWriter writer = new TransferWriter( table, columns, salesforceConnection, h2Connection );
+        final boolean filtered = !filters.contains( Collections.<String>emptySet() );
+        LOGGER.info("Transfer '"  + table + "' data" + ( filtered ? " where " + getFiltersDescription( filters ) : "" ) + "..." );
+        final Calendar syncTimestamp = readSyncTimestamp( table );
+        // THE CACHED ROWS ARE DROPPED, UNTIL THE TRANSFER IS DONE THE TABLE IS NOT LOADED
+        table.setLoaded( false );
         writer.createTable();
-        if ( table.isQueriable && !table.columns.isEmpty() ) {
+        if ( filtered ){
             try {
-                final Instant start = Instant.now();
-                final String sql = "SELECT " + table.getColumnList() + " FROM " + table;
-                QueryResult queryResult = null;
-                int rows = 0;
-                do {
-                    queryResult = queryResult == null ? salesforceConnection.partnerConnection.query(sql) : salesforceConnection.partnerConnection.queryMore(queryResult.getQueryLocator());
-                    SObject[] records = queryResult.getRecords();
-                    for (SObject row : records) {
-                        List<ForceResultField> clearRow = removeServiceInfo( row );
-                        writer.transferRecord( clearRow );
+                if ( filters.size() > 1 ){
+                    // THE FILTERS MAY SELECT THE SAME ROWS
+                    writer.mergeRows();
+                }
+                for ( Set<String> filter : filters ){
+                    transferRecords( table, columns, writer, String.join(" AND ", filter ) );
+                }
+                writer.createIndexes();
+                table.setLoaded( columns, filters );
+                table.setSyncTimestamp( syncTimestamp );
+                return;
+            } catch ( Throwable ex ){
+                // THE CONDITIONS MAY USE FIELDS SALESFORCE CANNOT FILTER. LOAD ALL ROWS INSTEAD.
+                LOGGER.log(Level.WARNING, "Error transferring '" + table + "' filtered data, transfer all rows", ex );
+                writer = new TransferWriter( table, columns, salesforceConnection, h2Connection );
+                writer.createTable();
+            }
+        }
+        try {
+            transferRecords( table, columns, writer, null );
+            writer.createIndexes();
+        } catch ( SQLException ex ){
+            throw ex;
+        } catch ( Exception ex ){
+            // THE TABLE STAYS NOT LOADED, THE NEXT QUERY LOADS IT AGAIN
+            throw new SQLException( "Error transferring '" + table + "' data: " + ex.getMessage(), ex );
+        }
+        table.setLoaded( columns );
+        table.setSyncTimestamp( syncTimestamp );
+    }
+
+    private boolean isIncrementalSyncPossible( Table table ){
+        return "incremental".equalsIgnoreCase( salesforceConnection.getParameter("sync", "full")) && table.isLoaded() && table.getSyncTimestamp() != null;
+    }
+
+    /**
+     * With sync=incremental, read the Salesforce server time before loading a table. Later syncs transfer the changes done after it.
+     */
+    private Calendar readSyncTimestamp( Table table ){
+        if ( "incremental".equalsIgnoreCase( salesforceConnection.getParameter("sync", "full"))){
+            try {
+                return partnerConnection.getServerTimestamp().getTimestamp();
+            } catch ( ConnectionException ex ){
+                LOGGER.log(Level.WARNING, "Cannot read the server timestamp, '" + table + "' will be loaded again on sync", ex );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merge the rows modified since the last sync, found by SystemModstamp or for objects without it by getUpdated(),
+     * and delete the rows reported by getDeleted(). Returns false if the changes cannot be read, for example because
+     * the last sync is older than the 30 days Salesforce keeps the deleted records. Then the table has to be loaded again.
+     */
+    private boolean transferChanges( Table table ){
+        try {
+            final Instant start = Instant.now();
+            final Calendar since = (Calendar)table.getSyncTimestamp().clone();
+            // OVERLAP WITH THE PREVIOUS SYNC, FOR TRANSACTIONS COMMITTED AFTER IT READ THE SERVER TIME
+            since.add( Calendar.MINUTE, -1 );
+            Calendar until = partnerConnection.getServerTimestamp().getTimestamp();
+            final List<Column> columns = table.getCachedColumns();
+            final TransferWriter writer = new TransferWriter( table, columns, salesforceConnection, h2Connection );
+            LOGGER.info("Synchronize '"  + table + "' changes since " + since.toInstant() + "..." );
+            writer.addColumns();
+            if ( table.getColumn("SystemModstamp") != null ){
+                transferRecords( table, columns, writer, "SystemModstamp > " + since.toInstant().truncatedTo( ChronoUnit.SECONDS ));
+            } else {
+                final GetUpdatedResult updated = partnerConnection.getUpdated( table.name, since, until );
+                until = getEarliest( until, updated.getLatestDateCovered() );
+                final String[] ids = updated.getIds() != null ? updated.getIds() : new String[0];
+                for ( int i = 0; i < ids.length; i += ID_BATCH_SIZE ){
+                    final StringBuilder sb = new StringBuilder();
+                    for ( int j = i; j < Math.min( ids.length, i + ID_BATCH_SIZE ); j++ ){
+                        if ( sb.length() > 0 ) sb.append(", ");
+                        sb.append("'").append( ids[j] ).append("'");
                     }
+                    transferRecords( table, columns, writer, "Id IN (" + sb + ")" );
+                }
+            }
+            final GetDeletedResult deleted = partnerConnection.getDeleted( table.name, since, until );
+            until = getEarliest( until, deleted.getLatestDateCovered() );
+            final List<String> deletedIds = new ArrayList<>();
+            if ( deleted.getDeletedRecords() != null ){
+                for ( DeletedRecord deletedRecord : deleted.getDeletedRecords() ){
+                    deletedIds.add( deletedRecord.getId() );
+                }
+            }
+            writer.deleteRecords( deletedIds );
+            writer.createIndexes();
+            table.setSyncTimestamp( until );
+            table.setSynchronized();
+            LOGGER.info("Synchronized '" + table + "' changes, deleted " + deletedIds.size() + " rows, in " + Duration.between( start, Instant.now()).getSeconds() + " sec" );
+            return true;
+        } catch ( Throwable ex ){
+            LOGGER.log(Level.WARNING, "Cannot synchronize '" + table + "' changes, transfer the table again", ex );
+            return false;
+        }
+    }
 
-                    rows+= records.length;
-                } while (!queryResult.isDone());
-                LOGGER.info("Transferred '" + table + "' " + rows + " rows in " + Duration.between( start, Instant.now()).getSeconds() + " sec" );
-            } catch (Throwable ex) {
-                LOGGER.log(Level.SEVERE, "Error transferring data", ex );
-                ex.printStackTrace();
-                //throw new SQLException(ex);
+    private static Calendar getEarliest( Calendar calendar, Calendar other ){
+        return other != null && other.before( calendar ) ? other : calendar;
+    }
+
+    /**
+     * Merge into the cache the rows matching the filters, using all cached columns. The indexes are updated after the last filter.
+     */
+    private void transferFilteredRows( Table table, List<Set<String>> filters ) throws SQLException {
+        final List<Column> columns = table.getCachedColumns();
+        TransferWriter writer = new TransferWriter( table, columns, salesforceConnection, h2Connection );
+        final boolean filtered = !filters.contains( Collections.<String>emptySet() );
+        LOGGER.info("Transfer '"  + table + "' data" + ( filtered ? " where " + getFiltersDescription( filters ) : "" ) + "..." );
+        writer.addColumns();
+        try {
+            for ( Set<String> filter : filtered ? filters : Collections.singletonList( Collections.<String>emptySet() )){
+                transferRecords( table, columns, writer, filter.isEmpty() ? null : String.join(" AND ", filter ));
+                table.addLoadedFilter( filter );
+            }
+            writer.createIndexes();
+        } catch ( Exception ex ){
+            if ( !filtered ){
+                // THE QUERY WOULD RUN ON MISSING ROWS
+                throw ex instanceof SQLException ? (SQLException)ex : new SQLException( "Error transferring '" + table + "' data: " + ex.getMessage(), ex );
             }
+            // THE CONDITIONS MAY USE FIELDS SALESFORCE CANNOT FILTER. LOAD ALL ROWS INSTEAD.
+            LOGGER.log(Level.WARNING, "Error transferring '" + table + "' filtered data, transfer all rows", ex );
+            transferFilteredRows( table, Collections.singletonList( Collections.emptySet() ));
         }
     }
 
+    private static String getFiltersDescription( List<Set<String>> filters ){
+        return String.join(" AND ", filters.get(0) ) + ( filters.size() > 1 ? " and " + ( filters.size() - 1 ) + " more filters" : "" );
+    }
 
+    /**
+     * Add the missing columns to the rows already in the cache, selecting only the rows matching the loaded filters.
+     */
+    private void transferMissingColumns( Table table, List<Column> columns ) throws SQLException {
+        final List<Column> missingColumns = table.getMissingColumns( columns );
+        final Column idColumn = table.getColumn("Id");
+        missingColumns.remove( idColumn );
+        if ( !missingColumns.isEmpty() && idColumn != null ){
+            final List<Column> mergeColumns = new ArrayList<>();
+            mergeColumns.add( idColumn );
+            mergeColumns.addAll( missingColumns );
+            TransferWriter writer = new TransferWriter( table, mergeColumns, salesforceConnection, h2Connection );
+            LOGGER.info("Transfer '"  + table + "' columns " + missingColumns + "..." );
+            writer.addColumns();
+            try {
+                final List<String> whereClauses = table.getLoadedFiltersSoql( getMaxWhereLength( table, mergeColumns ));
+                if ( whereClauses == null ){
+                    transferRecords( table, mergeColumns, writer, null );
+                } else {
+                    for ( String whereClause : whereClauses ){
+                        transferRecords( table, mergeColumns, writer, whereClause );
+                    }
+                }
+                writer.createIndexes();
+            } catch ( Exception ex ){
+                // THE COLUMNS ARE NOT IN THE CACHE, THE PARTIALLY FILLED H2 COLUMNS ARE REMOVED
+                writer.dropColumns();
+                throw ex instanceof SQLException ? (SQLException)ex : new SQLException( "Error transferring '" + table + "' columns " + missingColumns + ": " + ex.getMessage(), ex );
+            }
+            table.addCachedColumns( missingColumns );
+        }
+    }
 
-    private List<List> removeServiceInfo(Iterator<XmlObject> rows) {
-        return removeServiceInfo(IteratorUtils.toList(rows));
+    private void transferRecords( Table table, List<Column> columns, TransferWriter writer, String whereClause ) throws Exception {
+        if ( table.isQueriable && !columns.isEmpty() ) {
+            try {
+                final String sql = "SELECT " + getColumnList( columns ) + " FROM " + table;
+                if ( whereClause != null ){
+                    copyRecords( partnerConnection, table, sql + " WHERE " + whereClause, columns, writer );
+                } else if ( writer.isNewTable() ){
+                    transferCompleteTable( table, columns, writer, sql );
+                } else {
+                    copyRecords( partnerConnection, table, sql, columns, writer );
+                }
+            } finally {
+                writer.close();
+            }
+        }
     }
-    private List<List> removeServiceInfo(List<XmlObject> rows) {
-        return rows.stream()
-                .filter(this::isDataObjectType)
-                .map(this::removeServiceInfo)
-                .collect(Collectors.toList());
+
+    /**
+     * Fetch the records of the SOQL query and write them using the writer. Returns the number of rows.
+     */
+    private int copyRecords( PartnerConnection partnerConnection, Table table, String sql, List<Column> columns, TransferWriter writer ) throws Exception {
+        final Instant start = Instant.now();
+        final PageFetcher fetcher = new PageFetcher( partnerConnection, sql, salesforceConnection.getIntParameter("pagequeue", 2 ),
+                columns, salesforceConnection.getIntParameter("batchsize", 0 ));
+        int rows = 0;
+        try {
+            QueryResult queryResult;
+            while ((queryResult = fetcher.nextPage()) != null) {
+                SObject[] records = queryResult.getRecords();
+                for (SObject row : records) {
+                    writer.transferRecord(row);
+                }
+                writer.commitBatch();
+
+                rows += records.length;
+            }
+        } finally {
+            fetcher.close();
+        }
+        writer.close();
+        LOGGER.info("Transferred '" + table + "' " + rows + " rows in " + Duration.between( start, Instant.now()).getSeconds() + " sec, batch size " + fetcher.getBatchSize() );
+        return rows;
     }
 
-    private List<ForceResultField> removeServiceInfo(XmlObject row) {
-        List obj = IteratorUtils.toList(row.getChildren()).stream()
-                .filter(this::isDataObjectType)
-                .skip(1) // Removes duplicate Id from SF Partner API response
-                // (https://developer.salesforce.com/forums/?id=906F00000008kciIAA)
-                .map(field -> isNestedResultset(field)
-                        ? removeServiceInfo(field.getChildren())
-                        : toForceResultField(field))
-                .collect(Collectors.toList());
-        return (List<ForceResultField>)obj;
+    /**
+     * Load all rows into a new table. Tables listed in the parameter bulk=Table1,Table2 or bulk=*, and if bulkrows is set
+     * tables with at least bulkrows rows, are read using a Bulk API 2.0 query job. If the job fails, or for other tables,
+     * the partner API is used. The rows are counted only for bulkrows, or later for splitting the table in chunks.
+     */
+    private void transferCompleteTable( Table table, List<Column> columns, TransferWriter writer, String sql ) throws Exception {
+        final boolean bulkForced = salesforceConnection.isTableInParameter("bulk", table );
+        final int bulkRows = salesforceConnection.getIntParameter("bulkrows", 0 );
+        final boolean bulkSupported = BulkQueryReader.isSupported( columns );
+        final int rows = bulkSupported && !bulkForced && bulkRows > 0 ? countRows( table ) : -1;
+        if ( bulkSupported && ( bulkForced || bulkRows > 0 && rows >= bulkRows ) && transferBulk( table, columns, writer )){
+            return;
+        }
+        final int transferredRows = transferChunks( table, columns, writer, sql, rows );
+        if ( transferredRows < 0 ){
+            copyRecords( partnerConnection, table, sql, columns, writer );
+        } else if ( rows >= 0 && transferredRows != rows ){
+            LOGGER.warning("Transferred '" + table + "' " + transferredRows + " rows in Id ranges, counted " + rows + " rows before. Records were created or deleted during the load.");
+        }
     }
 
-    private ForceResultField toForceResultField(XmlObject field) {
-        String fieldType = field.getXmlType() != null ? field.getXmlType().getLocalPart() : null;
-        if ("sObject".equalsIgnoreCase(fieldType)) {
-            List<XmlObject> children = new ArrayList<>();
-            field.getChildren().forEachRemaining(children::add);
-            field = children.get(2);
+    /**
+     * Number of rows in the Salesforce object, or -1 if the query fails.
+     */
+    private int countRows( Table table ){
+        try {
+            return partnerConnection.query("SELECT COUNT() FROM " + table.name ).getSize();
+        } catch ( ConnectionException ex ){
+            LOGGER.log(Level.WARNING, "Cannot count the rows of '" + table + "'", ex );
+            return -1;
         }
-        String name = field.getName().getLocalPart();
-        Object value = field.getValue();
-        return new ForceResultField(null, fieldType, name, value);
     }
 
-    private boolean isNestedResultset(XmlObject object) {
-        return object.getXmlType() != null && "QueryResult".equals(object.getXmlType().getLocalPart());
+    /**
+     * Read the table using a Bulk API 2.0 query job. Returns false if the job fails, then the table is empty again.
+     */
+    private boolean transferBulk( Table table, List<Column> columns, TransferWriter writer ) throws SQLException {
+        final Instant start = Instant.now();
+        try {
+            final int rows = new BulkQueryReader( partnerConnection.getConfig() ).transferRecords( table.name, columns, writer );
+            writer.close();
+            LOGGER.info("Transferred '" + table + "' " + rows + " rows in " + Duration.between( start, Instant.now()).getSeconds() + " sec using Bulk API" );
+            return true;
+        } catch ( Exception ex ){
+            LOGGER.log(Level.WARNING, "Error transferring '" + table + "' using Bulk API, transfer using the partner API", ex );
+            writer.close();
+            // REMOVE THE ROWS WRITTEN BEFORE THE ERROR
+            writer.createTable();
+            return false;
+        }
     }
 
-    private final static List<String> SOAP_RESPONSE_SERVICE_OBJECT_TYPES = Arrays.asList("type", "done", "queryLocator", "size");
+    /**
+     * With chunks greater than 1, a large table is split into Id ranges, loaded concurrently by chunkthreads threads.
+     * Each thread uses its own Salesforce connection and H2 session. The number of requests running at the same time
+     * for all tables is limited to MAX_CONCURRENT_CHUNKS, below the Salesforce limit of 25 long-running requests.
+     * The rows are counted if the given number is negative. Returns the number of transferred rows, or -1 if the table is not split.
+     */
+    private int transferChunks( Table table, List<Column> columns, TransferWriter writer, String sql, int rows ) throws Exception {
+        final int chunks = salesforceConnection.getIntParameter("chunks", 1 );
+        if ( chunks < 2 ){
+            return -1;
+        }
+        final List<String> conditions = IdRanges.getConditions( partnerConnection, table, chunks, rows );
+        if ( conditions.isEmpty() ){
+            return -1;
+        }
+        final int threads = Math.max( 1, Math.min( conditions.size(), Math.min( MAX_CONCURRENT_CHUNKS, salesforceConnection.getIntParameter("chunkthreads", 4 ))));
+        LOGGER.info("Transfer '" + table + "' in " + conditions.size() + " Id ranges using " + threads + " threads...");
+        final Instant start = Instant.now();
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for ( String condition : conditions ){
+                futures.add( executor.submit( () -> {
+                    CONCURRENT_CHUNKS.acquire();
+                    try ( JdbcConnection h2Session = salesforceConnection.openH2Session() ){
+                        final TransferWriter chunkWriter = new TransferWriter( table, columns, salesforceConnection, h2Session );
+                        chunkWriter.insertIntoTableOf( writer );
+                        return copyRecords( salesforceConnection.openPartnerConnection(), table, sql + " WHERE " + condition, columns, chunkWriter );
+                    } finally {
+                        CONCURRENT_CHUNKS.release();
+                    }
+                }));
+            }
+            int transferredRows = 0;
+            for ( Future<Integer> future : futures ){
+                try {
+                    transferredRows += future.get();
+                } catch ( InterruptedException ex ){
+                    Thread.currentThread().interrupt();
+                    throw new SQLException( "Interrupted while loading '" + table + "'", ex );
+                } catch ( ExecutionException ex ){
+                    throw ex.getCause() instanceof Exception ? (Exception)ex.getCause() : new SQLException( ex.getCause() );
+                }
+            }
+            LOGGER.info("Transferred '" + table + "' " + transferredRows + " rows in " + Duration.between( start, Instant.now()).getSeconds() + " sec using " + conditions.size() + " Id ranges" );
+            return transferredRows;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-    private boolean isDataObjectType(XmlObject object) {
-        return !SOAP_RESPONSE_SERVICE_OBJECT_TYPES.contains(object.getName().getLocalPart());
+    private static String getColumnList( List<Column> columns ){
+        StringBuilder sb = new StringBuilder();
+        for ( Column column : columns ){
+            if ( sb.length() > 0 ) sb.append(", ");
+            sb.append( column );
+        }
+        return sb.toString();
     }
 
 
@@ -1,13 +1,25 @@
 package com.wisecoders.dbschema.salesforce.io;
 
+import com.sforce.ws.bind.XmlObject;
 import com.wisecoders.dbschema.salesforce.SalesforceConnection;
 import com.wisecoders.dbschema.salesforce.schema.Column;
+import com.wisecoders.dbschema.salesforce.schema.ForeignKey;
 import com.wisecoders.dbschema.salesforce.schema.Table;
 
+import java.math.BigDecimal;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 
 import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
@@ -19,49 +31,67 @@ import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
 public class TransferWriter {
 
     public final static char QUOTE_CHAR = '"';
+    private final static String REPLACEMENT_SUFFIX = "$refresh";
 
     private String insertSql;
+    private int[] javaTypes;
     private final SalesforceConnection salesforceConnection;
+    private final Connection h2Connection;
     private final Table table;
+    // THE H2 TABLE WRITTEN BY THIS WRITER. A REFRESH WRITES A REPLACEMENT TABLE, THE CACHED TABLE CAN BE QUERIED MEANWHILE.
+    private String h2TableName;
+    private final List<Column> columns;
+    private boolean isNewTable = false, hasPrimaryKey = false;
+    private PreparedStatement stInsert;
+    private int batchSize = 0;
+    private boolean restoreAutoCommit = false;
+    private RecordDecoder decoder;
+    private Object[] values;
 
 
     public TransferWriter(Table table, SalesforceConnection salesforceConnection) {
+        this( table, table.columns, salesforceConnection, salesforceConnection.h2Connection );
+    }
+
+    /**
+     * Writer for a subset of the table columns, using the given H2 session.
+     */
+    public TransferWriter(Table table, List<Column> columns, SalesforceConnection salesforceConnection, Connection h2Connection ) {
         this.salesforceConnection = salesforceConnection;
+        this.h2Connection = h2Connection;
         this.table = table;
+        this.h2TableName = table.name;
+        this.columns = columns;
     }
 
     public void createTable() throws SQLException {
-        LOGGER.log(Level.INFO, "Transfer table '" + table.name + "'");
-        final StringBuilder createSb = new StringBuilder("create table ").append(QUOTE_CHAR).append(table.name).append(QUOTE_CHAR).append("(\n");
-        final StringBuilder insertSb = new StringBuilder("insert into ").append(QUOTE_CHAR).append(table.name).append(QUOTE_CHAR).append("(");
-        final StringBuilder insertValuesSb = new StringBuilder("values(");
+        LOGGER.log(Level.INFO, "Transfer table '" + h2TableName + "'");
+        final StringBuilder createSb = new StringBuilder("create table ").append(QUOTE_CHAR).append(h2TableName).append(QUOTE_CHAR).append("(\n");
         boolean appendComma = false;
-        for ( Column column : table.columns ) {
+        for ( Column column : columns ) {
 
             if (appendComma) {
                 createSb.append(",\n");
-                insertSb.append(",");
-                insertValuesSb.append(",");
             }
             createSb.append("\t").append(QUOTE_CHAR).append(column).append(QUOTE_CHAR).append(" ");
-            insertSb.append(QUOTE_CHAR).append(column).append(QUOTE_CHAR);
-            insertValuesSb.append("?");
             createSb.append( column.getH2Type());
+            if ( "Id".equals( column.name )) {
+                createSb.append(" not null");
+            }
             appendComma = true;
         }
         createSb.append(")");
-        insertSb.append(")");
-        insertValuesSb.append(")");
 
-        final String dropTableSQL = "drop table if exists " + QUOTE_CHAR + table.name + QUOTE_CHAR;
-        //LOGGER.log(Level.INFO, dropTableSQL);
-        salesforceConnection.h2Connection.prepareStatement(dropTableSQL).execute();
-        salesforceConnection.h2Connection.commit();
+        final String dropTableSQL = "drop table if exists " + QUOTE_CHAR + h2TableName + QUOTE_CHAR;
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            //LOGGER.log(Level.INFO, dropTableSQL);
+            h2Connection.prepareStatement(dropTableSQL).execute();
+            h2Connection.commit();
 
-
-        //LOGGER.log(Level.INFO, createSb.toString());
-        salesforceConnection.h2Connection.prepareStatement(createSb.toString()).execute();
-        salesforceConnection.h2Connection.commit();
+            //LOGGER.log(Level.INFO, createSb.toString());
+            h2Connection.prepareStatement(createSb.toString()).execute();
+            h2Connection.commit();
+        }
 
         /*
         THIS CAN BE USED TO WRITE DATA BACK TO SALESFORCE
@@ -70,33 +100,329 @@ public class TransferWriter {
                 " FOR EACH ROW\n" +
                 " CALL \"com.wisecoders.dbschema.salesforce.io.H2Trigger\"";
 
-        salesforceConnection.h2Connection.prepareStatement( createTriggerSQL ).execute();
-        salesforceConnection.h2Connection.commit();
+        h2Connection.prepareStatement( createTriggerSQL ).execute();
+        h2Connection.commit();
         */
 
-        this.insertSql = insertSb.toString() + insertValuesSb.toString();
+        this.isNewTable = true;
+        this.hasPrimaryKey = false;
+        this.insertSql = buildInsertSql("insert into ", "");
+    }
+
+    /**
+     * Create a new H2 table next to the cached one. After the rows are written, replaceCachedTable() replaces the cached table with it.
+     */
+    public void createReplacementTable() throws SQLException {
+        this.h2TableName = table.name + REPLACEMENT_SUFFIX;
+        createTable();
+    }
+
+    /**
+     * Replace the cached table with the replacement table, renaming also its primary key and indexes.
+     * The DDL waits for the queries running on the cached table in other sessions.
+     */
+    public void replaceCachedTable() throws SQLException {
+        final String quotedTableName = QUOTE_CHAR + table.name + QUOTE_CHAR;
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            try ( Statement st = h2Connection.createStatement() ){
+                st.execute("drop table if exists " + quotedTableName );
+                st.execute("alter table " + QUOTE_CHAR + h2TableName + QUOTE_CHAR + " rename to " + quotedTableName );
+                h2Connection.commit();
+            }
+            if ( hasPrimaryKey ){
+                executeIndexStatement("alter table " + quotedTableName + " rename constraint " + QUOTE_CHAR + "pk_" + h2TableName + QUOTE_CHAR +
+                        " to " + QUOTE_CHAR + "pk_" + table.name + QUOTE_CHAR );
+            }
+            if ( !salesforceConnection.isTableInParameter("skipindexes", table ) ){
+                for ( ForeignKey foreignKey : table.foreignKeys ){
+                    if ( columns.contains( foreignKey.column )){
+                        executeIndexStatement("alter index if exists " + QUOTE_CHAR + "idx_" + h2TableName + "_" + foreignKey.column.name + QUOTE_CHAR +
+                                " rename to " + QUOTE_CHAR + "idx_" + table.name + "_" + foreignKey.column.name + QUOTE_CHAR );
+                    }
+                }
+            }
+        }
+        this.h2TableName = table.name;
+        this.insertSql = buildInsertSql("insert into ", "");
+    }
+
+    /**
+     * Drop the table written by this writer, used when a replacement table cannot be loaded.
+     */
+    public void dropTable() throws SQLException {
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            try ( Statement st = h2Connection.createStatement() ){
+                st.execute("drop table if exists " + QUOTE_CHAR + h2TableName + QUOTE_CHAR );
+                h2Connection.commit();
+            }
+        }
+    }
+
+    /**
+     * Insert into the table created by another writer, for loading parts of the table in parallel.
+     */
+    public void insertIntoTableOf( TransferWriter writer ){
+        this.h2TableName = writer.h2TableName;
+        this.insertSql = buildInsertSql("insert into ", "");
+    }
+
+    /**
+     * Merge the rows by Id into the table created by this writer, for loading rows selected by overlapping filters.
+     * The primary key is created first, otherwise each merged row would scan the table for its Id.
+     */
+    public void mergeRows() throws SQLException {
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            createPrimaryKey();
+        }
+        this.insertSql = buildInsertSql("merge into ", " key(" + QUOTE_CHAR + "Id" + QUOTE_CHAR + ")");
+    }
+
+    public boolean isNewTable(){
+        return isNewTable;
+    }
+
+    /**
+     * Add the writer columns to a table which is already in the cache.
+     * The rows are merged by Id, so the writer columns should include Id. Tables cached without primary key receive it here.
+     */
+    public void addColumns() throws SQLException {
+        LOGGER.log(Level.INFO, "Add columns " + columns + " to table '" + table.name + "'");
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            for (Column column : columns) {
+                if (!"Id".equals(column.name)) {
+                    h2Connection.prepareStatement("alter table " + QUOTE_CHAR + h2TableName + QUOTE_CHAR +
+                            " add column if not exists " + QUOTE_CHAR + column.name + QUOTE_CHAR + " " + column.getH2Type()).execute();
+                }
+            }
+            h2Connection.commit();
+            createPrimaryKey();
+        }
+        this.insertSql = buildInsertSql("merge into ", " key(" + QUOTE_CHAR + "Id" + QUOTE_CHAR + ")");
+    }
+
+    /**
+     * Remove the writer columns added by addColumns(), except Id, after their transfer failed.
+     */
+    public void dropColumns(){
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            for (Column column : columns) {
+                if (!"Id".equals(column.name)) {
+                    executeIndexStatement("alter table " + QUOTE_CHAR + h2TableName + QUOTE_CHAR + " drop column if exists " + QUOTE_CHAR + column.name + QUOTE_CHAR );
+                }
+            }
+        }
+    }
+
+    private String buildInsertSql( String command, String keyClause ){
+        final StringBuilder insertSb = new StringBuilder(command).append(QUOTE_CHAR).append(h2TableName).append(QUOTE_CHAR).append("(");
+        final StringBuilder insertValuesSb = new StringBuilder("values(");
+        javaTypes = new int[columns.size()];
+        int columnIdx = 0;
+        for ( Column column : columns ) {
+            if ( columnIdx > 0 ) {
+                insertSb.append(",");
+                insertValuesSb.append(",");
+            }
+            insertSb.append(QUOTE_CHAR).append(column).append(QUOTE_CHAR);
+            insertValuesSb.append("?");
+            javaTypes[columnIdx++] = column.getJavaType();
+        }
+        insertSb.append(")").append(keyClause).append(" ");
+        insertValuesSb.append(")");
+        return insertSb.toString() + insertValuesSb.toString();
+    }
+
+
+    /**
+     * Create the primary key on Id and one index for each reference column written by this writer, then compute the table statistics.
+     * Executed after the bulk insert, so the load itself is not slowed down by index maintenance.
+     * The reference indexes and the statistics can be skipped using the connection parameter skipindexes=Table1,Table2 or skipindexes=*
+     * The primary key is always created, rows are merged by Id.
+     */
+    public void createIndexes() throws SQLException {
+        final String quotedTableName = QUOTE_CHAR + h2TableName + QUOTE_CHAR;
+        // H2 LOCKS THE SYSTEM TABLE DURING DDL. TABLES LOADED IN PARALLEL WOULD TIME OUT WAITING FOR IT.
+        synchronized ( salesforceConnection.getH2DdlLock() ) {
+            createPrimaryKey();
+            if ( salesforceConnection.isTableInParameter("skipindexes", table )) {
+                LOGGER.log(Level.INFO, "Skip indexes for '" + table.name + "'");
+                return;
+            }
+            final Set<Column> indexedColumns = new HashSet<>();
+            final Column idColumn = table.getColumn("Id");
+            if (idColumn != null) {
+                indexedColumns.add( idColumn );
+            }
+            for (ForeignKey foreignKey : table.foreignKeys) {
+                if (columns.contains(foreignKey.column) && indexedColumns.add(foreignKey.column)) {
+                    executeIndexStatement("create index if not exists " + QUOTE_CHAR + "idx_" + h2TableName + "_" + foreignKey.column.name + QUOTE_CHAR +
+                            " on " + quotedTableName + "(" + QUOTE_CHAR + foreignKey.column.name + QUOTE_CHAR + ")");
+                }
+            }
+            executeIndexStatement("analyze table " + quotedTableName );
+        }
+    }
+
+    /**
+     * Create the primary key on Id, if the table has none yet. Called under the H2 DDL lock.
+     * Tables which were already in the cache may have been loaded without it, by earlier versions or with skipindexes.
+     */
+    private void createPrimaryKey() throws SQLException {
+        final Column idColumn = table.getColumn("Id");
+        if ( hasPrimaryKey || idColumn == null || ( isNewTable && !columns.contains( idColumn ))){
+            return;
+        }
+        if ( !isNewTable && hasPrimaryKeyInH2() ){
+            hasPrimaryKey = true;
+            return;
+        }
+        executeIndexStatement("alter table " + QUOTE_CHAR + h2TableName + QUOTE_CHAR + " add constraint " + QUOTE_CHAR + "pk_" + h2TableName + QUOTE_CHAR +
+                " primary key (" + QUOTE_CHAR + idColumn.name + QUOTE_CHAR + ")");
+        hasPrimaryKey = true;
+    }
+
+    private boolean hasPrimaryKeyInH2() throws SQLException {
+        try ( PreparedStatement st = h2Connection.prepareStatement("select count(*) from INFORMATION_SCHEMA.TABLE_CONSTRAINTS " +
+                "where TABLE_SCHEMA = schema() and TABLE_NAME = ? and CONSTRAINT_TYPE = 'PRIMARY KEY'") ){
+            st.setString( 1, h2TableName );
+            try ( ResultSet rs = st.executeQuery() ){
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private void executeIndexStatement( String sql ){
+        try ( Statement st = h2Connection.createStatement() ){
+            st.execute( sql );
+            h2Connection.commit();
+        } catch ( SQLException ex ){
+            LOGGER.log(Level.WARNING, "Error executing '" + sql + "'", ex );
+        }
+    }
+
+    /**
+     * Bind the record to the table insert statement and add it to the current batch.
+     * The statement is prepared only once per table, the batch is executed by commitBatch().
+     */
+    public void transferRecord( XmlObject record ) throws SQLException {
+        if ( decoder == null ){
+            decoder = new RecordDecoder( columns );
+            values = new Object[ columns.size() ];
+        }
+        decoder.decode( record, values );
+        transferValues( values );
+    }
+
+    /**
+     * Bind the values, one for each writer column in the same order, and add them to the current batch.
+     */
+    public void transferValues( Object[] values ) throws SQLException {
+        prepareInsert();
+        for ( int i = 0; i < values.length; i++ ){
+            setValue( i, values[i] );
+        }
+        stInsert.addBatch();
+        batchSize++;
     }
 
+    private void prepareInsert() throws SQLException {
+        if ( stInsert == null ){
+            restoreAutoCommit = h2Connection.getAutoCommit();
+            h2Connection.setAutoCommit( false );
+            stInsert = h2Connection.prepareStatement(insertSql);
+        }
+    }
+
+    private void setValue( int i, Object value ) throws SQLException {
+        if (value == null) {
+            stInsert.setNull(i+1, getH2SqlType( javaTypes[i] ) );
+        } else {
+            stInsert.setObject(i+1, convert( value, javaTypes[i] ));
+        }
+    }
 
-    public void transferRecord(List<ForceResultField> fields ) throws Exception {
-        final PreparedStatement stInsert = salesforceConnection.h2Connection.prepareStatement(insertSql);
-        for ( ForceResultField field: fields ){
-            Object value = field.getValue();
-            Column column = table.getColumn( field.getName() );
-            int i = table.columns.indexOf( column );
-            if (value == null) {
-                stInsert.setNull(i+1, Types.VARCHAR );
-            } else {
-                stInsert.setObject(i+1, value);
+    /**
+     * Salesforce returns all values as text. Convert them to the Java type matching the H2 column type.
+     * Values which cannot be parsed are passed as they are, H2 will try to convert them.
+     */
+    static Object convert( Object value, int javaType ){
+        if ( !( value instanceof String )) return value;
+        final String str = (String)value;
+        try {
+            switch (javaType) {
+                case Types.BOOLEAN: return Boolean.valueOf( str );
+                case Types.INTEGER: return Integer.valueOf( str );
+                // AGGREGATE RESULTS MAY RETURN WHOLE NUMBERS AS 15.0
+                case Types.BIGINT: return str.indexOf('.') < 0 ? Long.valueOf( str ) : new BigDecimal( str ).longValueExact();
+                case Types.DECIMAL:
+                case Types.DOUBLE: return new BigDecimal( str );
+                case Types.DATE: return LocalDate.parse( str );
+                case Types.TIME: return LocalTime.parse( str.endsWith("Z") ? str.substring(0, str.length() - 1) : str );
+                case Types.TIMESTAMP: return OffsetDateTime.parse( str );
+                case Types.BLOB:
+                case Types.VARBINARY: return Base64.getMimeDecoder().decode( str );
+                default: return str;
             }
+        } catch ( RuntimeException ex ){
+            LOGGER.log(Level.FINE, "Cannot convert '" + str + "' to type " + javaType, ex );
+            return str;
         }
-        stInsert.execute();
-        stInsert.close();
-        salesforceConnection.h2Connection.commit();
     }
 
+    static int getH2SqlType( int javaType ){
+        switch (javaType) {
+            case Types.BOOLEAN:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.DATE:
+            case Types.TIME: return javaType;
+            case Types.DOUBLE: return Types.DECIMAL;
+            case Types.TIMESTAMP: return Types.TIMESTAMP_WITH_TIMEZONE;
+            case Types.BLOB: return Types.VARBINARY;
+            default: return Types.VARCHAR;
+        }
+    }
 
+    /**
+     * Delete the rows with the given Ids, which were deleted in Salesforce.
+     */
+    public void deleteRecords( List<String> ids ) throws SQLException {
+        if ( ids.isEmpty() ) return;
+        try ( PreparedStatement st = h2Connection.prepareStatement("delete from " + QUOTE_CHAR + h2TableName + QUOTE_CHAR +
+                " where " + QUOTE_CHAR + "Id" + QUOTE_CHAR + " = ?") ){
+            for ( String id : ids ){
+                st.setString( 1, id );
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+        if ( !h2Connection.getAutoCommit() ){
+            h2Connection.commit();
+        }
+    }
 
+    /**
+     * Execute the pending batch and commit. Called once for each page received from Salesforce.
+     */
+    public void commitBatch() throws SQLException {
+        if ( stInsert != null && batchSize > 0 ) {
+            stInsert.executeBatch();
+            batchSize = 0;
+        }
+        h2Connection.commit();
+    }
 
+    public void close() throws SQLException {
+        if ( stInsert != null ) {
+            try {
+                commitBatch();
+                stInsert.close();
+            } finally {
+                stInsert = null;
+                h2Connection.setAutoCommit( restoreAutoCommit );
+            }
+        }
+    }
 
 }
@@ -13,6 +13,7 @@ public class Column implements Serializable {
     public final String name, comment;
     private String type;
     public boolean calculated, nullable, autoIncrement;
+    public boolean filterable = true, sortable = true, groupable = true, aggregatable = true;
     public int length, digits, scale;
 
 
@@ -49,8 +50,25 @@ public class Column implements Serializable {
         this.calculated = calculated;
     }
 
+    /**
+     * The type used for this column in the H2 cache, derived from the JDBC type known in TypeInfo.
+     * Numeric columns are created as DECIMAL with the Salesforce precision and scale, if known.
+     * Formula fields may exceed the declared precision, so they are created without it.
+     */
     public String getH2Type(){
-        return "varchar";
+        switch ( getJavaType() ){
+            case Types.BOOLEAN: return "boolean";
+            case Types.INTEGER: return "integer";
+            case Types.BIGINT: return "bigint";
+            case Types.DECIMAL:
+            case Types.DOUBLE: return digits > 0 && !calculated ? "decimal(" + digits + "," + scale + ")" : "decimal";
+            case Types.DATE: return "date";
+            case Types.TIME: return "time";
+            case Types.TIMESTAMP: return "timestamp with time zone";
+            case Types.BLOB:
+            case Types.VARBINARY: return "varbinary";
+            default: return "varchar";
+        }
     }
 
 
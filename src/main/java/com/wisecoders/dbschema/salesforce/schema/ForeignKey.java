@@ -8,9 +8,16 @@ public class ForeignKey {
 
     public final Column column;
     public final Table targetTable;
+    // NAME USED IN SOQL TO READ FIELDS OF THE TARGET TABLE, LIKE Account.Name FOR AccountId
+    public final String relationshipName;
 
     public ForeignKey( Column column, Table targetTable ){
+        this( column, targetTable, null );
+    }
+
+    public ForeignKey( Column column, Table targetTable, String relationshipName ){
         this.column = column;
         this.targetTable = targetTable;
+        this.relationshipName = relationshipName;
     }
 }
@@ -7,24 +7,99 @@ import com.sforce.soap.partner.PartnerConnection;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
 
 /**
+ * The tables are kept in an immutable snapshot, replaced as a whole when the schema is loaded or reloaded.
+ * Readers use the current snapshot without locking and never see a schema in the middle of a reload.
+ * The snapshot is built under the refresh lock, so concurrent connections describe the schema only once.
+ *
  * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
  * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
  */
 public class Schema {
 
-    public final List<Table> tables = new ArrayList<>();
+    private static class Snapshot {
+        final List<Table> tables;
+        final Map<String,Table> tablesByName = new HashMap<>(), tablesByLowerName = new HashMap<>();
+        final boolean columnsLoaded;
+
+        Snapshot( List<Table> tables ){
+            this.tables = Collections.unmodifiableList( tables );
+            boolean columnsLoaded = false;
+            for ( Table table : tables ){
+                tablesByName.putIfAbsent( table.name, table );
+                tablesByLowerName.putIfAbsent( table.name.toLowerCase(), table );
+                columnsLoaded |= !table.columns.isEmpty();
+            }
+            this.columnsLoaded = columnsLoaded;
+        }
+    }
+
+    // SALESFORCE ACCEPTS UP TO 100 OBJECT NAMES IN ONE describeSObjects CALL
+    private static final int DESCRIBE_BATCH_SIZE = 100;
+
+    private volatile Snapshot snapshot = new Snapshot( new ArrayList<>() );
+    // HELD WHILE A NEW SNAPSHOT IS BUILT. THE READERS DO NOT USE IT.
+    private final Object refreshLock = new Object();
     private final ShowTables showTables;
+    private final int describeThreads;
 
-    public Schema( ShowTables showTables ){
+    public Schema( ShowTables showTables, int describeThreads ){
         this.showTables = showTables;
+        this.describeThreads = describeThreads;
+    }
+
+    /**
+     * The tables of the current snapshot. The list cannot be modified.
+     */
+    public List<Table> getTables(){
+        return snapshot.tables;
+    }
+
+    /**
+     * Add a table, replacing the snapshot with a copy which includes it.
+     */
+    public void addTable( Table table ){
+        synchronized ( refreshLock ){
+            final List<Table> tables = new ArrayList<>( snapshot.tables );
+            tables.add( table );
+            snapshot = new Snapshot( tables );
+        }
+    }
+
+    /**
+     * Load the table names. The tables get their columns from ensureColumnsAreLoaded().
+     */
+    private void refreshTables( PartnerConnection connection ) throws SQLException {
+        synchronized ( refreshLock ){
+            snapshot = new Snapshot( describeTables( connection ));
+        }
     }
 
-    public void refreshTables( PartnerConnection connection ) throws SQLException {
+    /**
+     * Load the tables and their columns, then replace the current snapshot with them.
+     * The current tables stay in use until the new ones are complete.
+     */
+    public void reload( PartnerConnection connection ) throws SQLException {
+        synchronized ( refreshLock ){
+            final Snapshot reloaded = new Snapshot( describeTables( connection ));
+            describeColumns( connection, reloaded );
+            snapshot = new Snapshot( new ArrayList<>( reloaded.tables ));
+        }
+    }
+
+    private List<Table> describeTables( PartnerConnection connection ) throws SQLException {
         LOGGER.info("Load schema tables...");
         try {
             final List<Table> _tables = new ArrayList<>();
@@ -36,51 +111,115 @@ public class Schema {
                     _tables.add( new Table(desc.getName(), desc.isQueryable(), desc.getLabel() ));
                 }
             }
-            tables.clear();
-            tables.addAll( _tables );
+            return _tables;
         } catch (Throwable ex) {
             throw new SQLException(ex);
         }
     }
 
-
-    public void refreshColumns( PartnerConnection connection ) throws SQLException {
+    /**
+     * Add the columns and foreign keys to the tables of a snapshot. All tables are described first,
+     * so if Salesforce fails no table gets only a part of the columns.
+     */
+    private void describeColumns( PartnerConnection connection, Snapshot target ) throws SQLException {
         LOGGER.info("Load schema columns..." );
-        try {
-            for ( Table table : tables ) {
-                DescribeSObjectResult result = connection.describeSObject(table.getName());
-                for (Field field : result.getFields()) {
-                    Column column = table.createColumn( field.getName(), getType(field),
-                            field.getLength(), field.getDigits(), field.getScale(),  field.isNillable(), field.isAutoNumber(), field.getLabel());
-                    column.setCalculated(field.isCalculated() || field.isAutoNumber());
-                    String[] referenceTos = field.getReferenceTo();
-                    if (referenceTos != null) {
-                        for (String referenceTo : referenceTos) {
-                            Table pkTable = getTable( referenceTo );
-                            if (pkTable != null) {
-                                table.createForeignKey( column, pkTable );
-                            }
+        final DescribeSObjectResult[] results = describeSObjects( connection, target.tables );
+        for ( int i = 0; i < results.length; i++ ){
+            final Table table = target.tables.get(i);
+            for (Field field : results[i].getFields()) {
+                // INTEGER FIELDS COME WITH DIGITS, DOUBLE, CURRENCY AND PERCENT WITH PRECISION
+                final int digits = field.getDigits() > 0 ? field.getDigits() : field.getPrecision();
+                Column column = table.createColumn( field.getName(), getType(field),
+                        field.getLength(), digits, field.getScale(),  field.isNillable(), field.isAutoNumber(), field.getLabel());
+                column.setCalculated(field.isCalculated() || field.isAutoNumber());
+                column.filterable = field.isFilterable();
+                column.sortable = field.isSortable();
+                column.groupable = field.isGroupable();
+                column.aggregatable = field.isAggregatable();
+                String[] referenceTos = field.getReferenceTo();
+                if (referenceTos != null) {
+                    for (String referenceTo : referenceTos) {
+                        Table pkTable = target.tablesByName.get( referenceTo );
+                        if (pkTable != null) {
+                            table.createForeignKey( column, pkTable, field.getRelationshipName() );
                         }
                     }
                 }
             }
-        } catch ( Throwable ex ){
-            throw new SQLException( ex );
         }
     }
 
+    /**
+     * Describe the tables in batches of 100, with 'describethreads' batches requested at the same time.
+     * The calls share the Salesforce connection; unlike the queries, they do not change its headers.
+     * Returns the results in the order of the tables.
+     */
+    private DescribeSObjectResult[] describeSObjects( PartnerConnection connection, List<Table> tables ) throws SQLException {
+        final long startTime = System.currentTimeMillis();
+        final DescribeSObjectResult[] results = new DescribeSObjectResult[ tables.size() ];
+        final int batches = ( tables.size() + DESCRIBE_BATCH_SIZE - 1 ) / DESCRIBE_BATCH_SIZE;
+        final int threads = Math.max( 1, Math.min( batches, describeThreads ));
+        final AtomicInteger described = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for ( int batchStart = 0; batchStart < tables.size(); batchStart += DESCRIBE_BATCH_SIZE ){
+                final int from = batchStart, to = Math.min( tables.size(), batchStart + DESCRIBE_BATCH_SIZE );
+                futures.add( executor.submit( () -> {
+                    final String[] names = new String[ to - from ];
+                    for ( int i = from; i < to; i++ ){
+                        names[ i - from ] = tables.get(i).getName();
+                    }
+                    final DescribeSObjectResult[] batch = connection.describeSObjects( names );
+                    if ( batch == null || batch.length != names.length ){
+                        throw new SQLException("Salesforce described " + ( batch == null ? 0 : batch.length ) + " of the objects " + String.join(", ", names ));
+                    }
+                    System.arraycopy( batch, 0, results, from, batch.length );
+                    LOGGER.info("Described " + described.addAndGet( names.length ) + " of " + tables.size() + " tables");
+                    return null;
+                }));
+            }
+            for ( Future<?> future : futures ){
+                future.get();
+            }
+        } catch ( InterruptedException ex ){
+            Thread.currentThread().interrupt();
+            throw new SQLException( "Interrupted while describing the tables", ex );
+        } catch ( ExecutionException ex ){
+            throw ex.getCause() instanceof SQLException ? (SQLException)ex.getCause() : new SQLException( ex.getCause() );
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Described " + tables.size() + " tables in " + batches + " calls using " + threads + " threads in " + ( System.currentTimeMillis() - startTime ) + " ms");
+        return results;
+    }
+
     public void ensureTablesAreLoaded(PartnerConnection partnerConnection ) throws SQLException {
-        if ( tables.isEmpty() ) {
-            refreshTables( partnerConnection );
+        if ( snapshot.tables.isEmpty() ) {
+            synchronized ( refreshLock ){
+                if ( snapshot.tables.isEmpty() ){
+                    refreshTables( partnerConnection );
+                }
+            }
         }
     }
 
+    /**
+     * The columns are loaded once, before the snapshot marked as having columns is published.
+     * Until then the other threads wait here, so they never read the columns while they are added.
+     */
     public void ensureColumnsAreLoaded(PartnerConnection partnerConnection ) throws SQLException {
-        ensureTablesAreLoaded( partnerConnection );
-        for ( Table table : tables ) {
-            if ( !table.columns.isEmpty() ) return;
+        if ( snapshot.columnsLoaded ){
+            return;
+        }
+        synchronized ( refreshLock ){
+            ensureTablesAreLoaded( partnerConnection );
+            final Snapshot current = snapshot;
+            if ( !current.columnsLoaded ){
+                describeColumns( partnerConnection, current );
+                snapshot = new Snapshot( new ArrayList<>( current.tables ));
+            }
         }
-        refreshColumns( partnerConnection );
     }
 
     private static String getType(Field field) {
@@ -92,11 +231,10 @@ public class Schema {
     }
 
     public Table getTable( String name ){
-        for ( Table table : tables ){
-            if ( name.equals( table.getName() )){
-                return table;
-            }
-        }
-        return null;
+        return snapshot.tablesByName.get( name );
+    }
+
+    public Table getTableIgnoreCase( String name ){
+        return snapshot.tablesByLowerName.get( name.toLowerCase() );
     }
 }
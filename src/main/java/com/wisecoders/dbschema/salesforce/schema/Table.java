@@ -2,7 +2,16 @@ package com.wisecoders.dbschema.salesforce.schema;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 /**
@@ -17,6 +26,28 @@ public class Table implements Serializable {
     public final List<ForeignKey> foreignKeys = new ArrayList<>();
     public final boolean isQueriable;
     private boolean isLoaded = false;
+    private final Set<Column> cachedColumns = new HashSet<>();
+    // EACH FILTER IS A SET OF SOQL CONDITIONS JOINED BY AND. THE EMPTY FILTER MEANS ALL ROWS ARE LOADED.
+    private final List<Set<String>> loadedFilters = new ArrayList<>();
+    // SALESFORCE SERVER TIME BEFORE THE LAST LOAD OR SYNC. CHANGES AFTER THIS TIME ARE NOT YET IN THE CACHE.
+    private Calendar syncTimestamp;
+    // LOCAL TIME OF THE LAST COMPLETE LOAD, REFRESH OR SYNC, USED TO FIND THE STALE TABLES
+    private long loadTime;
+    private transient Future<?> refresh;
+    // HELD WHILE THE CACHED TABLE IS LOADED OR CHANGED, SO A REFRESH DOES NOT REPLACE IT IN THE MIDDLE OF A LOAD
+    public final ReentrantLock loadLock = new ReentrantLock();
+    // THE LAST FAILED LOAD, GIVEN TO THE CONNECTIONS WHICH WAITED FOR IT
+    private long failedLoads;
+    private transient Exception loadFailure;
+    // STATEMENTS RUNNING NOW ON THE TABLE. A TABLE IN USE IS NOT EVICTED FROM THE CACHE.
+    private int runningStatements;
+    private long lastAccessTime, accessCount;
+    // SIZE OF THE CACHED TABLE, MEASURED AFTER EACH LOAD
+    private long cachedRows, cachedBytes;
+    // QUERIES ANSWERED FROM THE CACHE WHILE THE TABLE WAS STALE, AND THE REFRESH ACTIVITY
+    public final AtomicLong staleReads = new AtomicLong(), refreshes = new AtomicLong(), failedRefreshes = new AtomicLong(), lastRefreshMillis = new AtomicLong();
+    // LOADS FOR WHICH A CONNECTION WAITED ON THE LOAD OF ANOTHER CONNECTION INSTEAD OF LOADING THE TABLE ITSELF
+    public final AtomicLong loadWaits = new AtomicLong();
 
     public Table(String name, boolean isQueriable, String comment ) {
         this.name = name;
@@ -37,11 +68,26 @@ public class Table implements Serializable {
     }
 
     public ForeignKey createForeignKey(Column fromColumn, Table targetTable ){
-        ForeignKey fk = new ForeignKey( fromColumn, targetTable );
+        return createForeignKey( fromColumn, targetTable, null );
+    }
+
+    public ForeignKey createForeignKey(Column fromColumn, Table targetTable, String relationshipName ){
+        ForeignKey fk = new ForeignKey( fromColumn, targetTable, relationshipName );
         foreignKeys.add( fk );
         return fk;
     }
 
+    /**
+     * The foreign keys with the given SOQL relationship name, case-insensitive. Polymorphic relationships have more targets.
+     */
+    public List<ForeignKey> getRelationship( String relationshipName ){
+        final List<ForeignKey> relationship = new ArrayList<>();
+        for ( ForeignKey foreignKey : foreignKeys ){
+            if ( relationshipName.equalsIgnoreCase( foreignKey.relationshipName )) relationship.add( foreignKey );
+        }
+        return relationship;
+    }
+
     public String getColumnList(){
         StringBuilder sb = new StringBuilder();
         for ( Column column : columns ){
@@ -58,12 +104,306 @@ public class Table implements Serializable {
         return null;
     }
 
-    public boolean isLoaded(){
+    public Column getColumnIgnoreCase( String name ){
+        for ( Column column : columns ){
+            if ( name.equalsIgnoreCase( column.name )) return column;
+        }
+        return null;
+    }
+
+    /**
+     * Columns used in a query, found by name in the given set of lower-case query words. The Id is always included.
+     */
+    public List<Column> getColumnsUsedIn( Set<String> lowerCaseQueryWords ){
+        final List<Column> usedColumns = new ArrayList<>();
+        for ( Column column : columns ){
+            if ( "Id".equals( column.name ) || lowerCaseQueryWords.contains( column.name.toLowerCase() )){
+                usedColumns.add( column );
+            }
+        }
+        return usedColumns;
+    }
+
+    public synchronized boolean isLoaded(){
         return isLoaded;
     }
 
-    public void setLoaded( boolean loaded) {
+    /**
+     * Mark the table as loaded into the cache with all columns, or as not loaded.
+     */
+    public synchronized void setLoaded( boolean loaded) {
         this.isLoaded = loaded;
+        cachedColumns.clear();
+        loadedFilters.clear();
+        syncTimestamp = null;
+        loadTime = 0;
+        cachedRows = cachedBytes = 0;
+        if ( loaded ) {
+            cachedColumns.addAll( columns );
+            loadedFilters.add( Collections.emptySet() );
+            loadTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Mark the table as loaded into the cache with only the given columns.
+     */
+    public synchronized void setLoaded( Collection<Column> loadedColumns ) {
+        setLoaded( loadedColumns, Collections.emptySet() );
+    }
+
+    /**
+     * Mark the table as loaded into the cache with only the given columns and the rows matching the SOQL filter.
+     */
+    public synchronized void setLoaded( Collection<Column> loadedColumns, Set<String> filter ) {
+        setLoaded( loadedColumns, Collections.singletonList( filter ));
+    }
+
+    /**
+     * Mark the table as loaded into the cache with only the given columns and the rows matching any of the SOQL filters.
+     */
+    public synchronized void setLoaded( Collection<Column> loadedColumns, List<Set<String>> filters ) {
+        setRefreshed( loadedColumns, filters );
+    }
+
+    /**
+     * Mark the table as loaded again with the given columns and the rows matching the given filters, after a refresh.
+     */
+    public synchronized void setRefreshed( Collection<Column> loadedColumns, List<Set<String>> filters ) {
+        this.isLoaded = true;
+        cachedColumns.clear();
+        cachedColumns.addAll( loadedColumns );
+        loadedFilters.clear();
+        loadedFilters.addAll( filters );
+        loadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Record that the cached rows were synchronized with Salesforce.
+     */
+    public synchronized void setSynchronized() {
+        loadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Mark the table as loaded with the state saved by an earlier connection, for data which is already in the H2 database.
+     */
+    public synchronized void setRestored( Collection<Column> loadedColumns, List<Set<String>> filters, long loadTime, Calendar syncTimestamp ) {
+        setRefreshed( loadedColumns, filters );
+        this.loadTime = loadTime;
+        this.syncTimestamp = syncTimestamp;
+    }
+
+    /**
+     * Local time in milliseconds of the last complete load, refresh or sync.
+     */
+    public synchronized long getLoadTime(){
+        return loadTime;
+    }
+
+    /**
+     * Milliseconds since the table was loaded, refreshed or synchronized, or -1 if the table is not in the cache.
+     */
+    public synchronized long getAgeMillis(){
+        return isLoaded ? System.currentTimeMillis() - loadTime : -1;
+    }
+
+    /**
+     * Submit the refresh to the executor, unless a refresh of this table is already running. Returns the running refresh.
+     */
+    public synchronized Future<?> submitRefresh( ExecutorService executor, Runnable task ){
+        if ( refresh == null || refresh.isDone() ){
+            refresh = executor.submit( task );
+        }
+        return refresh;
+    }
+
+    public synchronized boolean isRefreshing(){
+        return refresh != null && !refresh.isDone();
+    }
+
+    /**
+     * Record the error of a load, so the connections waiting for this load fail with the same error instead of repeating the load.
+     */
+    public synchronized void setLoadFailed( Exception ex ){
+        failedLoads++;
+        loadFailure = ex;
+    }
+
+    public synchronized long getFailedLoads(){
+        return failedLoads;
+    }
+
+    public synchronized Exception getLoadFailure(){
+        return loadFailure;
+    }
+
+    /**
+     * Record that a statement starts using the table. Call release() when the statement is done.
+     */
+    public synchronized void acquire(){
+        runningStatements++;
+        recordAccess();
+    }
+
+    /**
+     * Record one more use of the table, by a statement which acquired it already.
+     */
+    public synchronized void recordAccess(){
+        accessCount++;
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    public synchronized void release(){
+        runningStatements--;
+    }
+
+    public synchronized long getLastAccessTime(){
+        return lastAccessTime;
+    }
+
+    public synchronized long getAccessCount(){
+        return accessCount;
+    }
+
+    /**
+     * Mark the table as not loaded, unless a statement is using it. The caller drops the H2 table.
+     * Returns false if the table is in use or not loaded.
+     */
+    public synchronized boolean evict(){
+        if ( runningStatements > 0 || !isLoaded ){
+            return false;
+        }
+        setLoaded( false );
+        return true;
+    }
+
+    public synchronized void setCacheSize( long rows, long bytes ){
+        this.cachedRows = rows;
+        this.cachedBytes = bytes;
+    }
+
+    public synchronized long getCachedRows(){
+        return cachedRows;
+    }
+
+    public synchronized long getCachedBytes(){
+        return cachedBytes;
+    }
+
+    /**
+     * Record that the rows matching the SOQL filter were merged into the cache.
+     * The loaded filters selecting a subset of these rows are not needed any more.
+     */
+    public synchronized void addLoadedFilter( Set<String> filter ) {
+        if ( isFilterLoaded( filter )){
+            return;
+        }
+        loadedFilters.removeIf( loadedFilter -> loadedFilter.containsAll( filter ));
+        loadedFilters.add( filter );
+    }
+
+    /**
+     * Record the rows loaded using the given filters under one filter selecting the same rows, like a semi-join
+     * loaded using IN conditions with the join keys.
+     */
+    public synchronized void replaceLoadedFilters( Collection<Set<String>> filters, Set<String> filter ) {
+        loadedFilters.removeAll( filters );
+        addLoadedFilter( filter );
+    }
+
+    public synchronized Calendar getSyncTimestamp(){
+        return syncTimestamp;
+    }
+
+    public synchronized void setSyncTimestamp( Calendar syncTimestamp ){
+        this.syncTimestamp = syncTimestamp;
+    }
+
+    /**
+     * A copy of the loaded filters.
+     */
+    public synchronized List<Set<String>> getLoadedFilters(){
+        return new ArrayList<>( loadedFilters );
+    }
+
+    public synchronized boolean isFullyLoaded(){
+        return isLoaded && loadedFilters.contains( Collections.<String>emptySet() );
+    }
+
+    /**
+     * True if all rows matching the filter are in the cache, because they were loaded by the same or a more general filter.
+     */
+    public synchronized boolean isFilterLoaded( Set<String> filter ){
+        if ( isLoaded ){
+            for ( Set<String> loadedFilter : loadedFilters ){
+                if ( filter.containsAll( loadedFilter )) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The SOQL conditions selecting the rows in the cache, or null if all rows are loaded.
+     * The loaded filters are joined by OR in conditions up to the given length, longer filters are returned alone.
+     * SOQL does not accept semi-joins inside OR, filters with a semi-join are returned alone too.
+     */
+    public synchronized List<String> getLoadedFiltersSoql( int maxLength ){
+        if ( isFullyLoaded() ) return null;
+        final List<String> conditions = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder();
+        for ( Set<String> loadedFilter : loadedFilters ){
+            if ( hasSemiJoin( loadedFilter )){
+                conditions.add( String.join(" AND ", loadedFilter ));
+                continue;
+            }
+            final String condition = "(" + String.join(" AND ", loadedFilter ) + ")";
+            if ( sb.length() > 0 && sb.length() + condition.length() + 4 > maxLength ){
+                conditions.add( sb.toString() );
+                sb.setLength( 0 );
+            }
+            if ( sb.length() > 0 ) sb.append(" OR ");
+            sb.append( condition );
+        }
+        if ( sb.length() > 0 ) conditions.add( sb.toString() );
+        return conditions;
+    }
+
+    private static boolean hasSemiJoin( Set<String> filter ){
+        for ( String condition : filter ){
+            if ( condition.contains(" IN (SELECT ")) return true;
+        }
+        return false;
+    }
+
+    public synchronized void addCachedColumns( Collection<Column> addedColumns ){
+        cachedColumns.addAll( addedColumns );
+    }
+
+    /**
+     * The columns in the cache, in the table order.
+     */
+    public synchronized List<Column> getCachedColumns(){
+        final List<Column> loadedColumns = new ArrayList<>();
+        for ( Column column : columns ){
+            if ( cachedColumns.contains( column )){
+                loadedColumns.add( column );
+            }
+        }
+        return loadedColumns;
+    }
+
+    /**
+     * From the given columns, return the ones which are not yet in the cache.
+     */
+    public synchronized List<Column> getMissingColumns( Collection<Column> requiredColumns ){
+        final List<Column> missingColumns = new ArrayList<>();
+        for ( Column column : requiredColumns ){
+            if ( !cachedColumns.contains( column )){
+                missingColumns.add( column );
+            }
+        }
+        return missingColumns;
     }
 
     @Override
@@ -45,11 +45,12 @@ public class TypeInfo {
             new TypeInfo("_byte", Types.VARBINARY, 10, 0, 0, 10),
             new TypeInfo("int", Types.INTEGER, 10, 0, 0, 10),
             new TypeInfo("_int", Types.INTEGER, 10, 0, 0, 10),
+            new TypeInfo("long", Types.BIGINT, 19, 0, 0, 10),
             new TypeInfo("decimal", Types.DECIMAL, 17, -324, 306, 10),
             new TypeInfo("double", Types.DOUBLE, 17, -324, 306, 10),
             new TypeInfo("_double", Types.DOUBLE, 17, -324, 306, 10),
-            new TypeInfo("percent", Types.DOUBLE, 17, -324, 306, 10),
-            new TypeInfo("currency", Types.DOUBLE, 17, -324, 306, 10),
+            new TypeInfo("percent", Types.DECIMAL, 17, -324, 306, 10),
+            new TypeInfo("currency", Types.DECIMAL, 17, -324, 306, 10),
             new TypeInfo("date", Types.DATE, 10, 0, 0, 0),
             new TypeInfo("time", Types.TIME, 10, 0, 0, 0),
             new TypeInfo("datetime", Types.TIMESTAMP, 10, 0, 0, 0),
@@ -0,0 +1,456 @@
+package com.wisecoders.dbschema.salesforce.sql;
+
+import com.wisecoders.dbschema.salesforce.schema.Column;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Condition from a SQL WHERE clause, which may be translated to SOQL.
+ * The translation has to select at least the rows H2 selects, it may select more:
+ * SOQL string comparisons are case-insensitive, so string columns are pushed only with '=', IN and prefix LIKE.
+ * Conditions which cannot be translated return null from toSoql().
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public abstract class Condition {
+
+    /**
+     * Resolve the columns referred in the SQL statement to Salesforce columns.
+     */
+    public interface ColumnResolver {
+        /**
+         * The column referred as qualifier.name, or null if it is not a column of the tables being pushed down.
+         */
+        Column resolve( String qualifier, String name );
+
+        /**
+         * The name of a resolved column in SOQL.
+         */
+        default String getSoqlName( String qualifier, Column column ){
+            return column.name;
+        }
+    }
+
+    /**
+     * The SOQL condition, or null if the condition cannot be expressed in SOQL.
+     */
+    public abstract String toSoql( ColumnResolver resolver );
+
+    /**
+     * True if the SOQL condition selects exactly the rows H2 selects, so the result may be taken from Salesforce as it is.
+     */
+    public boolean isExact( ColumnResolver resolver ){
+        return false;
+    }
+
+    /**
+     * The conditions which have to be true at the same time: the AND operands, or this condition.
+     */
+    public List<Condition> getConjuncts(){
+        final List<Condition> conjuncts = new ArrayList<>();
+        conjuncts.add( this );
+        return conjuncts;
+    }
+
+
+    public static class ColumnRef {
+        public final String qualifier, name;
+
+        public ColumnRef( String qualifier, String name ){
+            this.qualifier = qualifier;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return qualifier != null ? qualifier + "." + name : name;
+        }
+    }
+
+    public enum LiteralType { STRING, NUMBER, BOOLEAN, DATE, TIMESTAMP }
+
+    public static class Literal {
+        public final LiteralType type;
+        public final String value;
+
+        public Literal( LiteralType type, String value ){
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return type == LiteralType.STRING ? "'" + value + "'" : value;
+        }
+    }
+
+
+    public static class And extends Condition {
+        public final List<Condition> operands;
+
+        public And( List<Condition> operands ){
+            this.operands = operands;
+        }
+
+        /**
+         * Operands which cannot be translated are skipped, SOQL will return more rows.
+         */
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            final StringBuilder sb = new StringBuilder();
+            for ( Condition operand : operands ){
+                final String soql = operand.toSoql( resolver );
+                if ( soql != null ){
+                    if ( sb.length() > 0 ) sb.append(" AND ");
+                    sb.append( operand instanceof Or ? "(" + soql + ")" : soql );
+                }
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+
+        @Override
+        public boolean isExact( ColumnResolver resolver ) {
+            for ( Condition operand : operands ){
+                if ( !operand.isExact( resolver )) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public List<Condition> getConjuncts() {
+            final List<Condition> conjuncts = new ArrayList<>();
+            for ( Condition operand : operands ){
+                conjuncts.addAll( operand.getConjuncts() );
+            }
+            return conjuncts;
+        }
+    }
+
+    public static class Or extends Condition {
+        public final List<Condition> operands;
+
+        public Or( List<Condition> operands ){
+            this.operands = operands;
+        }
+
+        /**
+         * All operands have to be translated, otherwise rows matching the missing operand would be lost.
+         */
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            final StringBuilder sb = new StringBuilder();
+            for ( Condition operand : operands ){
+                final String soql = operand.toSoql( resolver );
+                if ( soql == null ) return null;
+                if ( sb.length() > 0 ) sb.append(" OR ");
+                sb.append( operand instanceof And ? "(" + soql + ")" : soql );
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public boolean isExact( ColumnResolver resolver ) {
+            for ( Condition operand : operands ){
+                if ( !operand.isExact( resolver )) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Part of the statement which is not understood, like functions, sub-queries or parameters.
+     */
+    public static class Unknown extends Condition {
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            return null;
+        }
+    }
+
+    public static class Comparison extends Condition {
+        public final ColumnRef column;
+        public final String operator;
+        public final Literal literal;
+
+        public Comparison( ColumnRef column, String operator, Literal literal ){
+            this.column = column;
+            this.operator = "<>".equals( operator ) ? "!=" : operator;
+            this.literal = literal;
+        }
+
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            final Column resolved = resolve( resolver, column );
+            if ( resolved == null ) return null;
+            if ( !"=".equals( operator ) && !isOrdered( resolved )) return null;
+            final String value = formatLiteral( resolved, literal );
+            if ( value != null ){
+                return resolver.getSoqlName( column.qualifier, resolved ) + " " + operator + " " + value;
+            }
+            final OffsetDateTime fractional = getFractionalTimestamp( resolved, literal );
+            if ( fractional == null ){
+                return null;
+            }
+            // SOQL DATETIME LITERALS HAVE NO FRACTIONAL SECONDS. RANGES ARE WIDENED TO WHOLE SECONDS, SO THEY STILL SELECT ALL ROWS H2 SELECTS.
+            final OffsetDateTime seconds = fractional.truncatedTo( ChronoUnit.SECONDS );
+            switch ( operator ){
+                case ">":
+                case ">=": return resolver.getSoqlName( column.qualifier, resolved ) + " >= " + DateTimeFormatter.ISO_INSTANT.format( seconds );
+                case "<":
+                case "<=": return resolver.getSoqlName( column.qualifier, resolved ) + " < " + DateTimeFormatter.ISO_INSTANT.format( seconds.plusSeconds( 1 ));
+                default: return null;
+            }
+        }
+
+        /**
+         * SOQL '!=' returns also the rows where the field is null, H2 skips them.
+         */
+        @Override
+        public boolean isExact( ColumnResolver resolver ) {
+            final Column resolved = resolve( resolver, column );
+            return !"!=".equals( operator ) && toSoql( resolver ) != null && !isString( resolved ) && formatLiteral( resolved, literal ) != null;
+        }
+    }
+
+    public static class In extends Condition {
+        public final ColumnRef column;
+        public final List<Literal> literals;
+        public final boolean not;
+
+        public In( ColumnRef column, List<Literal> literals, boolean not ){
+            this.column = column;
+            this.literals = literals;
+            this.not = not;
+        }
+
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            final Column resolved = resolve( resolver, column );
+            if ( resolved == null || ( not && !isOrdered( resolved ))) return null;
+            final StringBuilder sb = new StringBuilder();
+            for ( Literal literal : literals ){
+                final String value = formatLiteral( resolved, literal );
+                if ( value == null ) return null;
+                if ( sb.length() > 0 ) sb.append(", ");
+                sb.append( value );
+            }
+            return resolver.getSoqlName( column.qualifier, resolved ) + ( not ? " NOT IN (" : " IN (" ) + sb + ")";
+        }
+
+        /**
+         * SOQL NOT IN returns also the rows where the field is null, H2 skips them.
+         */
+        @Override
+        public boolean isExact( ColumnResolver resolver ) {
+            return !not && toSoql( resolver ) != null && !isString( resolve( resolver, column ));
+        }
+    }
+
+    /**
+     * Only LIKE 'prefix%' is translated, other patterns may use escape characters or wildcards not known by SOQL.
+     */
+    public static class Like extends Condition {
+        public final ColumnRef column;
+        public final String pattern;
+
+        public Like( ColumnRef column, String pattern ){
+            this.column = column;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            final Column resolved = resolve( resolver, column );
+            if ( resolved == null || !isString( resolved ) ) return null;
+            final String prefix = pattern.endsWith("%") ? pattern.substring( 0, pattern.length() - 1 ) : null;
+            if ( prefix == null || prefix.isEmpty() || prefix.contains("%") || prefix.contains("_") || prefix.contains("\\") ) return null;
+            return resolver.getSoqlName( column.qualifier, resolved ) + " LIKE " + quote( prefix + "%" );
+        }
+    }
+
+    public static class IsNull extends Condition {
+        public final ColumnRef column;
+        public final boolean not;
+
+        public IsNull( ColumnRef column, boolean not ){
+            this.column = column;
+            this.not = not;
+        }
+
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            final Column resolved = resolve( resolver, column );
+            if ( resolved == null ) return null;
+            return resolver.getSoqlName( column.qualifier, resolved ) + ( not ? " != null" : " = null" );
+        }
+
+        @Override
+        public boolean isExact( ColumnResolver resolver ) {
+            return toSoql( resolver ) != null;
+        }
+    }
+
+    /**
+     * Boolean column used as condition, like WHERE IsDeleted or WHERE NOT IsDeleted.
+     */
+    public static class BooleanColumn extends Condition {
+        public final ColumnRef column;
+        public final boolean value;
+
+        public BooleanColumn( ColumnRef column, boolean value ){
+            this.column = column;
+            this.value = value;
+        }
+
+        @Override
+        public String toSoql( ColumnResolver resolver ) {
+            final Column resolved = resolve( resolver, column );
+            if ( resolved == null || resolved.getJavaType() != Types.BOOLEAN ) return null;
+            return resolver.getSoqlName( column.qualifier, resolved ) + " = " + value;
+        }
+
+        @Override
+        public boolean isExact( ColumnResolver resolver ) {
+            return toSoql( resolver ) != null;
+        }
+    }
+
+
+    private static Column resolve( ColumnResolver resolver, ColumnRef ref ){
+        final Column column = resolver.resolve( ref.qualifier, ref.name );
+        return column != null && column.filterable && !"multipicklist".equalsIgnoreCase( column.getType() ) ? column : null;
+    }
+
+    private static boolean isString( Column column ){
+        switch ( column.getJavaType() ){
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.ARRAY: return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * Columns for which SOQL and H2 use the same ordering, so ranges and negations may be pushed.
+     */
+    private static boolean isOrdered( Column column ){
+        switch ( column.getJavaType() ){
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.DOUBLE:
+            case Types.DATE:
+            case Types.TIMESTAMP: return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * The SOQL literal for comparing with the given column, or null if the literal does not fit the column type.
+     */
+    static String formatLiteral( Column column, Literal literal ){
+        try {
+            switch ( column.getJavaType() ){
+                case Types.BOOLEAN:
+                    if ( literal.type == LiteralType.BOOLEAN ||
+                            ( literal.type == LiteralType.STRING && ( "true".equalsIgnoreCase( literal.value ) || "false".equalsIgnoreCase( literal.value )))){
+                        return literal.value.toLowerCase();
+                    }
+                    return null;
+                case Types.INTEGER:
+                case Types.BIGINT:
+                case Types.DECIMAL:
+                case Types.DOUBLE:
+                    if ( literal.type == LiteralType.NUMBER || literal.type == LiteralType.STRING ){
+                        return new BigDecimal( literal.value.trim() ).toPlainString();
+                    }
+                    return null;
+                case Types.DATE:
+                    if ( literal.type == LiteralType.DATE || literal.type == LiteralType.STRING ){
+                        return LocalDate.parse( literal.value.trim() ).toString();
+                    }
+                    return null;
+                case Types.TIMESTAMP:
+                    if ( literal.type == LiteralType.TIMESTAMP || literal.type == LiteralType.DATE || literal.type == LiteralType.STRING ){
+                        return formatTimestamp( literal.value.trim() );
+                    }
+                    return null;
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.ARRAY:
+                    return literal.type == LiteralType.STRING ? quote( literal.value ) : null;
+                default:
+                    return null;
+            }
+        } catch ( NumberFormatException | DateTimeParseException ex ){
+            return null;
+        }
+    }
+
+    /**
+     * SOQL datetime literals have no fractional seconds. Returns null for a timestamp with fractional seconds.
+     */
+    private static String formatTimestamp( String value ){
+        final OffsetDateTime dateTime = parseTimestamp( value );
+        return dateTime.getNano() == 0 ? DateTimeFormatter.ISO_INSTANT.format( dateTime ) : null;
+    }
+
+    /**
+     * The literal compared with a datetime column, if it has fractional seconds, otherwise null.
+     */
+    private static OffsetDateTime getFractionalTimestamp( Column column, Literal literal ){
+        if ( column.getJavaType() != Types.TIMESTAMP || ( literal.type != LiteralType.TIMESTAMP && literal.type != LiteralType.STRING )){
+            return null;
+        }
+        try {
+            final OffsetDateTime dateTime = parseTimestamp( literal.value.trim() );
+            return dateTime.getNano() != 0 ? dateTime : null;
+        } catch ( DateTimeParseException ex ){
+            return null;
+        }
+    }
+
+    /**
+     * Timestamps without time zone are read by H2 in the session time zone, which is the JVM time zone.
+     */
+    private static OffsetDateTime parseTimestamp( String value ){
+        OffsetDateTime dateTime;
+        if ( value.length() == 10 ){
+            dateTime = LocalDate.parse( value ).atStartOfDay( ZoneId.systemDefault() ).toOffsetDateTime();
+        } else {
+            final String isoValue = value.replace(' ', 'T');
+            try {
+                dateTime = OffsetDateTime.parse( isoValue );
+            } catch ( DateTimeParseException ex ){
+                dateTime = LocalDateTime.parse( isoValue ).atZone( ZoneId.systemDefault() ).toOffsetDateTime();
+            }
+        }
+        return dateTime;
+    }
+
+    static String quote( String value ){
+        final StringBuilder sb = new StringBuilder("'");
+        for ( char c : value.toCharArray() ){
+            switch ( c ){
+                case '\'': sb.append("\\'"); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default: sb.append( c );
+            }
+        }
+        return sb.append("'").toString();
+    }
+}
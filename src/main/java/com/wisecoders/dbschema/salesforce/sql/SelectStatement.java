@@ -0,0 +1,522 @@
+package com.wisecoders.dbschema.salesforce.sql;
+
+import com.wisecoders.dbschema.salesforce.schema.Column;
+import com.wisecoders.dbschema.salesforce.schema.ForeignKey;
+import com.wisecoders.dbschema.salesforce.schema.Schema;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SELECT statement parsed by SqlParser. Only the parts used for pushing work down to Salesforce are kept.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class SelectStatement {
+
+    // SALESFORCE DOES NOT ACCEPT A LARGER OFFSET
+    public static final int MAX_SOQL_OFFSET = 2000;
+
+    /**
+     * Selected column, or all columns of the table if the column and the aggregate are null.
+     * The aggregate is count, count_distinct, sum, min or max, with a null column for COUNT(*).
+     */
+    public static class SelectItem {
+        public final String starQualifier, aggregate, alias;
+        public final Condition.ColumnRef column;
+
+        SelectItem( String starQualifier, Condition.ColumnRef column, String aggregate, String alias ){
+            this.starQualifier = starQualifier;
+            this.column = column;
+            this.aggregate = aggregate;
+            this.alias = alias;
+        }
+    }
+
+    public static class OrderItem {
+        public final Condition.ColumnRef column;
+        public final boolean descending;
+        public final Boolean nullsFirst;
+
+        OrderItem( Condition.ColumnRef column, boolean descending, Boolean nullsFirst ){
+            this.column = column;
+            this.descending = descending;
+            this.nullsFirst = nullsFirst;
+        }
+    }
+
+    /**
+     * INNER or LEFT JOIN with an equality ON condition between two columns.
+     */
+    public static class Join {
+        public final String tableName, tableAlias;
+        public final boolean left;
+        public final Condition.ColumnRef leftColumn, rightColumn;
+
+        Join( String tableName, String tableAlias, boolean left, Condition.ColumnRef leftColumn, Condition.ColumnRef rightColumn ){
+            this.tableName = tableName;
+            this.tableAlias = tableAlias;
+            this.left = left;
+            this.leftColumn = leftColumn;
+            this.rightColumn = rightColumn;
+        }
+    }
+
+    /**
+     * Table of a join pushed down to Salesforce, read through the relationship path from the first table.
+     */
+    private static class JoinedTable {
+        final String alias;
+        final Table table;
+        // RELATIONSHIP NAMES FROM THE FIRST TABLE, LIKE Account.Owner.
+        final String prefix;
+
+        JoinedTable( String alias, Table table, String prefix ){
+            this.alias = alias;
+            this.table = table;
+            this.prefix = prefix;
+        }
+    }
+
+    // SOQL FOLLOWS AT MOST 5 LEVELS OF PARENT RELATIONSHIPS
+    private static final int MAX_RELATIONSHIP_DEPTH = 5;
+
+    public final String tableName;
+    public String tableAlias;
+    public final List<Join> joins = new ArrayList<>();
+    public boolean distinct, grouped, hasUnknownClauses;
+    // NULL IF THE SELECT LIST OR THE ORDER BY USE EXPRESSIONS
+    public List<SelectItem> selectItems;
+    // NULL IF THE GROUP BY USES EXPRESSIONS OR THERE IS A HAVING CLAUSE
+    public List<Condition.ColumnRef> groupBy = new ArrayList<>();
+    public List<OrderItem> orderBy = new ArrayList<>();
+    public Condition where;
+    public Integer limit, offset;
+
+    SelectStatement( String tableName ){
+        this.tableName = tableName;
+    }
+
+    /**
+     * Resolve columns written as name, table.name or alias.name.
+     */
+    public Condition.ColumnResolver getColumnResolver( Table table ){
+        return ( qualifier, name ) -> {
+            if ( !isTableQualifier( qualifier )) {
+                return null;
+            }
+            return table.getColumnIgnoreCase( name );
+        };
+    }
+
+    /**
+     * Resolve the columns of one table of a join, written as alias.name, or as name if the other table has no such column.
+     */
+    public Condition.ColumnResolver getJoinColumnResolver( String alias, Table table, Table otherTable ){
+        return ( qualifier, name ) -> {
+            if ( qualifier == null ){
+                return otherTable.getColumnIgnoreCase( name ) == null ? table.getColumnIgnoreCase( name ) : null;
+            }
+            return qualifier.equalsIgnoreCase( alias ) ? table.getColumnIgnoreCase( name ) : null;
+        };
+    }
+
+    private boolean isTableQualifier( String qualifier ){
+        return qualifier == null || qualifier.equalsIgnoreCase( tableName ) || qualifier.equalsIgnoreCase( tableAlias );
+    }
+
+    /**
+     * The WHERE clause conditions which can be translated to SOQL, each one as SOQL text. They have to be joined using AND.
+     * Returns an empty set if nothing can be pushed down.
+     */
+    public Set<String> getSoqlConditions( Table table ){
+        return getSoqlConditions( getColumnResolver( table ));
+    }
+
+    /**
+     * The WHERE clause conditions on the columns known by the resolver, translated to SOQL.
+     */
+    public Set<String> getSoqlConditions( Condition.ColumnResolver resolver ){
+        final Set<String> conditions = new LinkedHashSet<>();
+        if ( where != null ){
+            for ( Condition conjunct : where.getConjuncts() ){
+                final String soql = conjunct.toSoql( resolver );
+                if ( soql != null ){
+                    conditions.add( conjunct instanceof Condition.Or ? "(" + soql + ")" : soql );
+                }
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * True for a statement with GROUP BY, HAVING or aggregate functions in the select list.
+     */
+    public boolean isAggregate(){
+        if ( grouped ) return true;
+        if ( selectItems != null ){
+            for ( SelectItem item : selectItems ){
+                if ( item.aggregate != null ) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The selected columns, in the order of the select list. Returns null if the select list has expressions, aggregates or unknown columns.
+     */
+    public List<Column> getSelectedColumns( Table table ){
+        if ( selectItems == null ) return null;
+        final Condition.ColumnResolver resolver = getColumnResolver( table );
+        final List<Column> columns = new ArrayList<>();
+        for ( SelectItem item : selectItems ){
+            if ( item.aggregate != null ){
+                return null;
+            } else if ( item.column == null ){
+                if ( !isTableQualifier( item.starQualifier )) return null;
+                columns.addAll( table.columns );
+            } else {
+                final Column column = resolver.resolve( item.column.qualifier, item.column.name );
+                if ( column == null ) return null;
+                columns.add( column );
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * The column labels of the result, matching getSelectedColumns().
+     */
+    public List<String> getSelectedLabels( Table table ){
+        final List<String> labels = new ArrayList<>();
+        for ( SelectItem item : selectItems ){
+            if ( item.column == null ){
+                for ( Column column : table.columns ) labels.add( column.name );
+            } else {
+                labels.add( item.alias != null ? item.alias : table.getColumnIgnoreCase( item.column.name ).name );
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * SOQL returning exactly the rows H2 would return for this statement, for browsing a table without caching it.
+     * This is possible for a SELECT of columns with LIMIT, where the WHERE and ORDER BY have the same semantics in SOQL.
+     * String comparison and ordering are case-insensitive in SOQL, so they are not accepted.
+     * Returns null if the statement has to be executed in H2.
+     */
+    public String getLimitedSoql( Table table ){
+        return limit != null ? getSoql( table, true ) : null;
+    }
+
+    /**
+     * SOQL for the statement, used when the query is executed directly in Salesforce instead of the cache.
+     * All WHERE conditions and ORDER BY columns have to be translated, but they follow the SOQL semantics:
+     * string comparison and ordering are case-insensitive. Returns null if the statement cannot be written in SOQL.
+     */
+    public String getDirectSoql( Table table ){
+        return getSoql( table, false );
+    }
+
+    private String getSoql( Table table, boolean exact ){
+        if ( !table.isQueriable || !joins.isEmpty() || distinct || grouped || hasUnknownClauses || orderBy == null ||
+                ( offset != null && offset > MAX_SOQL_OFFSET )) {
+            return null;
+        }
+        final List<Column> columns = getSelectedColumns( table );
+        if ( columns == null ) return null;
+        final Condition.ColumnResolver resolver = getColumnResolver( table );
+        final StringBuilder sb = new StringBuilder("SELECT ");
+        final Set<Column> distinctColumns = new LinkedHashSet<>( columns );
+        boolean first = true;
+        for ( Column column : distinctColumns ){
+            if ( !first ) sb.append(", ");
+            sb.append( column.name );
+            first = false;
+        }
+        sb.append(" FROM ").append( table.name );
+        if ( !appendWhere( sb, resolver, exact ) || !appendOrderBy( sb, resolver, exact, null )){
+            return null;
+        }
+        if ( limit != null ){
+            sb.append(" LIMIT ").append( limit );
+        }
+        if ( offset != null && offset > 0 ){
+            sb.append(" OFFSET ").append( offset );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * SOQL aggregate query for a statement with COUNT, SUM, MIN, MAX and GROUP BY on columns, returning a few rows
+     * instead of loading the table. COUNT(*) is written as COUNT(Id), or as COUNT() if it is the only selected item.
+     * With exact=true the result has to be the one H2 would return: MIN, MAX, COUNT(DISTINCT ..) and GROUP BY are not
+     * accepted on text columns, which SOQL compares case-insensitive. Picklists can be grouped, their values are unique.
+     * Returns null if the statement cannot be written in SOQL.
+     */
+    public SoqlQuery getAggregateQuery( Table table, boolean exact ){
+        if ( !table.isQueriable || !joins.isEmpty() || distinct || hasUnknownClauses || selectItems == null || groupBy == null || orderBy == null || offset != null ){
+            return null;
+        }
+        final Condition.ColumnResolver resolver = getColumnResolver( table );
+        final Set<Column> groupColumns = new LinkedHashSet<>();
+        for ( Condition.ColumnRef columnRef : groupBy ){
+            final Column column = resolver.resolve( columnRef.qualifier, columnRef.name );
+            if ( column == null || !column.groupable || ( exact && !hasSameGrouping( column ))) return null;
+            groupColumns.add( column );
+        }
+        final List<SoqlQuery.Field> fields = new ArrayList<>();
+        final List<String> soqlItems = new ArrayList<>();
+        boolean countOnly = false;
+        int expressionCount = 0;
+        for ( SelectItem item : selectItems ){
+            if ( item.aggregate == null ){
+                final Column column = item.column != null ? resolver.resolve( item.column.qualifier, item.column.name ) : null;
+                if ( column == null || !groupColumns.contains( column )) return null;
+                if ( !soqlItems.contains( column.name )) soqlItems.add( column.name );
+                fields.add( new SoqlQuery.Field( item.alias != null ? item.alias : column.name, new String[]{ column.name }, column, column.getJavaType() ));
+                continue;
+            }
+            final Column column = item.column != null ? resolver.resolve( item.column.qualifier, item.column.name ) : null;
+            if ( item.column != null && ( column == null || !column.aggregatable )) return null;
+            final String soqlItem, label;
+            int javaType = Types.BIGINT;
+            switch ( item.aggregate ){
+                case "count":
+                    if ( column == null && selectItems.size() == 1 && groupColumns.isEmpty() ){
+                        countOnly = true;
+                    }
+                    soqlItem = column == null ? "COUNT(Id)" : "COUNT(" + column.name + ")";
+                    label = column == null ? "COUNT(*)" : soqlItem;
+                    break;
+                case "count_distinct":
+                    if ( exact && !hasSameOrdering( column )) return null;
+                    soqlItem = "COUNT_DISTINCT(" + column.name + ")";
+                    label = "COUNT(DISTINCT " + column.name + ")";
+                    break;
+                case "sum":
+                    javaType = column.getJavaType();
+                    if ( javaType != Types.INTEGER && javaType != Types.BIGINT && javaType != Types.DECIMAL && javaType != Types.DOUBLE ) return null;
+                    // H2 SUMS INTEGERS AS BIGINT
+                    if ( javaType == Types.INTEGER ) javaType = Types.BIGINT;
+                    soqlItem = label = "SUM(" + column.name + ")";
+                    break;
+                default:
+                    if ( exact && !hasSameOrdering( column )) return null;
+                    javaType = column.getJavaType();
+                    soqlItem = label = item.aggregate.toUpperCase() + "(" + column.name + ")";
+            }
+            fields.add( new SoqlQuery.Field( item.alias != null ? item.alias : label, new String[]{ "expr" + expressionCount++ }, column, javaType ));
+            soqlItems.add( soqlItem );
+        }
+        final StringBuilder sb = new StringBuilder("SELECT ");
+        sb.append( countOnly ? "COUNT()" : String.join( ", ", soqlItems )).append(" FROM ").append( table.name );
+        if ( !appendWhere( sb, resolver, exact )) return null;
+        if ( !groupColumns.isEmpty() ){
+            sb.append(" GROUP BY ");
+            boolean first = true;
+            for ( Column column : groupColumns ){
+                if ( !first ) sb.append(", ");
+                sb.append( column.name );
+                first = false;
+            }
+        }
+        if ( !appendOrderBy( sb, resolver, exact, groupColumns )) return null;
+        if ( limit != null ){
+            sb.append(" LIMIT ").append( limit );
+        }
+        final SoqlQuery query = new SoqlQuery( sb.toString() );
+        query.fields.addAll( fields );
+        query.countOnly = countOnly;
+        return query;
+    }
+
+    /**
+     * SOQL for a join from the first table to its parent tables, written with relationship fields: Contact c JOIN Account a
+     * ON c.AccountId = a.Id reads a.Name as Account.Name. Each join has to match a reference field of a table joined before
+     * with the Id of the joined table, the reference cannot be polymorphic. For INNER JOIN the reference has to be set.
+     * With exact=true the WHERE and ORDER BY have to return the rows H2 would return.
+     * Returns null if the statement cannot be written in SOQL.
+     */
+    public SoqlQuery getJoinQuery( Table table, Schema schema, boolean exact ){
+        if ( joins.isEmpty() || !table.isQueriable || distinct || grouped || hasUnknownClauses || selectItems == null || orderBy == null ||
+                ( offset != null && offset > MAX_SOQL_OFFSET )){
+            return null;
+        }
+        final List<JoinedTable> joinedTables = new ArrayList<>();
+        joinedTables.add( new JoinedTable( tableAlias != null ? tableAlias : tableName, table, "" ));
+        final List<String> referenceConditions = new ArrayList<>();
+        for ( Join join : joins ){
+            final Table parentTable = schema.getTable( join.tableName );
+            if ( parentTable == null || !parentTable.isQueriable ) return null;
+            final String alias = join.tableAlias != null ? join.tableAlias : join.tableName;
+            final Condition.ColumnRef referenceRef;
+            if ( alias.equalsIgnoreCase( join.rightColumn.qualifier ) && "Id".equalsIgnoreCase( join.rightColumn.name )){
+                referenceRef = join.leftColumn;
+            } else if ( alias.equalsIgnoreCase( join.leftColumn.qualifier ) && "Id".equalsIgnoreCase( join.leftColumn.name )){
+                referenceRef = join.rightColumn;
+            } else {
+                return null;
+            }
+            final JoinedTable childTable = findJoinedTable( joinedTables, referenceRef.qualifier );
+            final Column reference = childTable != null ? childTable.table.getColumnIgnoreCase( referenceRef.name ) : null;
+            if ( reference == null ) return null;
+            ForeignKey relationship = null;
+            for ( ForeignKey foreignKey : childTable.table.foreignKeys ){
+                if ( foreignKey.column == reference ){
+                    // POLYMORPHIC REFERENCES HAVE MORE FOREIGN KEYS
+                    if ( relationship != null || foreignKey.targetTable != parentTable || foreignKey.relationshipName == null ) return null;
+                    relationship = foreignKey;
+                }
+            }
+            if ( relationship == null || childTable.prefix.chars().filter( c -> c == '.' ).count() >= MAX_RELATIONSHIP_DEPTH ) return null;
+            if ( !join.left ){
+                referenceConditions.add( childTable.prefix + reference.name + " != null" );
+            }
+            joinedTables.add( new JoinedTable( alias, parentTable, childTable.prefix + relationship.relationshipName + "." ));
+        }
+
+        final Condition.ColumnResolver resolver = new Condition.ColumnResolver() {
+            @Override
+            public Column resolve( String qualifier, String name ){
+                Column found = null;
+                for ( JoinedTable joinedTable : joinedTables ){
+                    if ( qualifier == null || qualifier.equalsIgnoreCase( joinedTable.alias )){
+                        final Column column = joinedTable.table.getColumnIgnoreCase( name );
+                        // AMBIGUOUS COLUMNS ARE REPORTED BY H2
+                        if ( column != null && found != null ) return null;
+                        if ( column != null ) found = column;
+                    }
+                }
+                return found;
+            }
+
+            @Override
+            public String getSoqlName( String qualifier, Column column ){
+                for ( JoinedTable joinedTable : joinedTables ){
+                    if ( qualifier == null ? joinedTable.table == column.table : qualifier.equalsIgnoreCase( joinedTable.alias )){
+                        return joinedTable.prefix + column.name;
+                    }
+                }
+                return column.name;
+            }
+        };
+
+        final List<SoqlQuery.Field> fields = new ArrayList<>();
+        final Set<String> soqlItems = new LinkedHashSet<>();
+        for ( SelectItem item : selectItems ){
+            if ( item.aggregate != null ) return null;
+            if ( item.column == null ){
+                boolean found = false;
+                for ( JoinedTable joinedTable : joinedTables ){
+                    if ( item.starQualifier == null || item.starQualifier.equalsIgnoreCase( joinedTable.alias )){
+                        found = true;
+                        for ( Column column : joinedTable.table.columns ){
+                            addJoinField( fields, soqlItems, column.name, joinedTable.prefix + column.name, column );
+                        }
+                    }
+                }
+                if ( !found ) return null;
+            } else {
+                final Column column = resolver.resolve( item.column.qualifier, item.column.name );
+                if ( column == null ) return null;
+                addJoinField( fields, soqlItems, item.alias != null ? item.alias : column.name, resolver.getSoqlName( item.column.qualifier, column ), column );
+            }
+        }
+        final StringBuilder sb = new StringBuilder("SELECT ").append( String.join( ", ", soqlItems )).append(" FROM ").append( table.name );
+        if ( !appendWhere( sb, resolver, exact )) return null;
+        boolean hasWhere = where != null;
+        for ( String referenceCondition : referenceConditions ){
+            sb.append( hasWhere ? " AND " : " WHERE " ).append( referenceCondition );
+            hasWhere = true;
+        }
+        if ( !appendOrderBy( sb, resolver, exact, null )) return null;
+        if ( limit != null ){
+            sb.append(" LIMIT ").append( limit );
+        }
+        if ( offset != null && offset > 0 ){
+            sb.append(" OFFSET ").append( offset );
+        }
+        final SoqlQuery query = new SoqlQuery( sb.toString() );
+        query.fields.addAll( fields );
+        return query;
+    }
+
+    private static JoinedTable findJoinedTable( List<JoinedTable> joinedTables, String alias ){
+        for ( JoinedTable joinedTable : joinedTables ){
+            if ( joinedTable.alias.equalsIgnoreCase( alias )) return joinedTable;
+        }
+        return null;
+    }
+
+    private static void addJoinField( List<SoqlQuery.Field> fields, Set<String> soqlItems, String label, String soqlName, Column column ){
+        soqlItems.add( soqlName );
+        fields.add( new SoqlQuery.Field( label, soqlName.split("\\."), column, column.getJavaType() ));
+    }
+
+    /**
+     * Append the WHERE conditions. Returns false if some condition cannot be written in SOQL, or with exact=true, if the result could differ.
+     */
+    private boolean appendWhere( StringBuilder sb, Condition.ColumnResolver resolver, boolean exact ){
+        if ( where != null ){
+            if ( exact && !where.isExact( resolver )) return false;
+            boolean first = true;
+            for ( Condition conjunct : where.getConjuncts() ){
+                final String soql = conjunct.toSoql( resolver );
+                if ( soql == null ) return false;
+                sb.append( first ? " WHERE " : " AND " ).append( conjunct instanceof Condition.Or ? "(" + soql + ")" : soql );
+                first = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append the ORDER BY. The columns have to be sortable, and one of the allowed columns if these are given.
+     */
+    private boolean appendOrderBy( StringBuilder sb, Condition.ColumnResolver resolver, boolean exact, Set<Column> allowedColumns ){
+        if ( !orderBy.isEmpty() ){
+            sb.append(" ORDER BY ");
+            boolean first = true;
+            for ( OrderItem item : orderBy ){
+                final Column column = resolver.resolve( item.column.qualifier, item.column.name );
+                if ( column == null || !column.sortable || ( exact && !hasSameOrdering( column )) ||
+                        ( allowedColumns != null && !allowedColumns.contains( column ))) return false;
+                if ( !first ) sb.append(", ");
+                // H2 SORTS NULLS FIRST ASCENDING AND LAST DESCENDING, MAKE IT EXPLICIT
+                final boolean nullsFirst = item.nullsFirst != null ? item.nullsFirst : !item.descending;
+                sb.append( resolver.getSoqlName( item.column.qualifier, column )).append( item.descending ? " DESC" : " ASC" ).append( nullsFirst ? " NULLS FIRST" : " NULLS LAST" );
+                first = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Text is grouped case-insensitive in SOQL. Picklist values cannot differ only by case.
+     */
+    private static boolean hasSameGrouping( Column column ){
+        return hasSameOrdering( column ) || "picklist".equalsIgnoreCase( column.getType() );
+    }
+
+    /**
+     * Salesforce sorts text case-insensitive, H2 does not. Ids have the same order in both.
+     */
+    private static boolean hasSameOrdering( Column column ){
+        switch ( column.getJavaType() ){
+            case Types.BOOLEAN:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.DOUBLE:
+            case Types.DATE:
+            case Types.TIMESTAMP: return true;
+            default: return "id".equalsIgnoreCase( column.getType() ) || "reference".equalsIgnoreCase( column.getType() );
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.wisecoders.dbschema.salesforce.sql;
+
+import com.wisecoders.dbschema.salesforce.schema.Column;
+import com.wisecoders.dbschema.salesforce.schema.ForeignKey;
+import com.wisecoders.dbschema.salesforce.schema.Schema;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SOQL query sent as it is to Salesforce, written as 'soql: SELECT ...' or '{soql SELECT ...}'.
+ * The result columns are read from the SOQL select list: fields, parent relationship fields like Account.Owner.Name,
+ * the fields listed in TYPEOF, aggregate functions and functions like toLabel() or FORMAT().
+ * Their types are found in the schema, following the relationships. Child relationship subqueries are not returned.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class SoqlQuery {
+
+    private static final Pattern PREFIX = Pattern.compile( "^\\s*soql\\s*:(.*)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL );
+    private static final Pattern ESCAPE = Pattern.compile( "^\\s*\\{\\s*soql\\s(.*)}\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL );
+    private static final Set<String> VALUE_FUNCTIONS = new HashSet<>( Arrays.asList( "tolabel", "format", "convertcurrency" ));
+    private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>( Arrays.asList( "where", "with", "group", "order", "limit", "offset", "for", "using", "update" ));
+
+    /**
+     * One column of the result. The path is the list of element names leading to the value in the returned records.
+     */
+    public static class Field {
+        public final String label;
+        public final String[] path;
+        // THE SCHEMA COLUMN, NULL FOR EXPRESSIONS AND UNKNOWN FIELDS
+        public final Column column;
+        public final int javaType;
+
+        Field( String label, String[] path, Column column, int javaType ){
+            this.label = label;
+            this.path = path;
+            this.column = column;
+            this.javaType = javaType;
+        }
+    }
+
+    public final String soql;
+    public final List<Field> fields = new ArrayList<>();
+    // SELECT COUNT() RETURNS ONLY THE NUMBER OF ROWS
+    public boolean countOnly;
+
+    SoqlQuery( String soql ){
+        this.soql = soql;
+    }
+
+    /**
+     * The SOQL text if the statement is a passthrough SOQL query, otherwise null.
+     */
+    public static String getPassthroughSoql( String sql ){
+        if ( sql == null ) return null;
+        Matcher matcher = PREFIX.matcher( sql );
+        if ( !matcher.matches() ){
+            matcher = ESCAPE.matcher( sql );
+            if ( !matcher.matches() ) return null;
+        }
+        String soql = matcher.group(1).trim();
+        if ( soql.endsWith(";") ){
+            soql = soql.substring( 0, soql.length() - 1 ).trim();
+        }
+        return soql;
+    }
+
+    public static SoqlQuery parse( String soql, Schema schema ) throws SQLException {
+        final List<SqlTokenizer.Token> tokens = SqlTokenizer.tokenize( soql );
+        if ( tokens.isEmpty() || !tokens.get(0).isKeyword("select") ){
+            throw new SQLException("SOQL query should start with SELECT: " + soql );
+        }
+        // SPLIT THE SELECT LIST BY THE COMMAS OUTSIDE PARENTHESES AND TYPEOF
+        final List<List<SqlTokenizer.Token>> items = new ArrayList<>();
+        List<SqlTokenizer.Token> item = new ArrayList<>();
+        int depth = 0, pos = 1;
+        boolean inTypeOf = false;
+        for ( ; pos < tokens.size(); pos++ ){
+            final SqlTokenizer.Token token = tokens.get( pos );
+            if ( depth == 0 && !inTypeOf && token.isKeyword("from") ) break;
+            if ( token.isSymbol("(") ) depth++;
+            if ( token.isSymbol(")") ) depth--;
+            if ( depth == 0 && token.isKeyword("typeof") ) inTypeOf = true;
+            if ( depth == 0 && token.isKeyword("end") ) inTypeOf = false;
+            if ( depth == 0 && !inTypeOf && token.isSymbol(",") ){
+                items.add( item );
+                item = new ArrayList<>();
+            } else {
+                item.add( token );
+            }
+        }
+        items.add( item );
+        if ( pos + 1 >= tokens.size() ){
+            throw new SQLException("Missing FROM in SOQL query: " + soql );
+        }
+        final String objectName = tokens.get( pos + 1 ).text;
+        final String objectAlias = pos + 2 < tokens.size() && tokens.get( pos + 2 ).type == SqlTokenizer.TokenType.IDENTIFIER &&
+                !CLAUSE_KEYWORDS.contains( tokens.get( pos + 2 ).text.toLowerCase() ) ? tokens.get( pos + 2 ).text : null;
+        boolean aggregate = false;
+        for ( int i = pos; i < tokens.size(); i++ ){
+            if ( tokens.get(i).isKeyword("group") ) aggregate = true;
+        }
+        for ( List<SqlTokenizer.Token> selectItem : items ){
+            if ( selectItem.size() > 1 && selectItem.get(1).isSymbol("(") && !VALUE_FUNCTIONS.contains( selectItem.get(0).text.toLowerCase() )){
+                aggregate = true;
+            }
+        }
+
+        final SoqlQuery query = new SoqlQuery( soql );
+        final Table table = schema.getTableIgnoreCase( objectName );
+        int expressionCount = 0;
+        for ( List<SqlTokenizer.Token> selectItem : items ){
+            if ( selectItem.isEmpty() || selectItem.get(0).isSymbol("(") ){
+                // CHILD RELATIONSHIP SUBQUERY
+                continue;
+            }
+            final SqlTokenizer.Token first = selectItem.get(0);
+            if ( first.isKeyword("typeof") ){
+                query.addTypeOfFields( selectItem, table, schema );
+            } else if ( selectItem.size() > 1 && selectItem.get(1).isSymbol("(") ){
+                final int close = findClosingParenthesis( selectItem, 1 );
+                final List<SqlTokenizer.Token> arguments = selectItem.subList( 2, close );
+                final String alias = close + 1 < selectItem.size() ? selectItem.get( selectItem.size() - 1 ).text : null;
+                final String function = first.text.toLowerCase();
+                if ( "count".equals( function ) && arguments.isEmpty() && items.size() == 1 ){
+                    query.countOnly = true;
+                    query.fields.add( new Field( "count", new String[0], null, Types.INTEGER ));
+                } else if ( VALUE_FUNCTIONS.contains( function )){
+                    final String[] path = getPath( arguments, objectName, objectAlias );
+                    final Column column = resolve( table, path );
+                    final String label = alias != null ? alias : String.join( ".", path );
+                    query.fields.add( new Field( label, alias != null ? new String[]{ alias } : path, column,
+                            "convertcurrency".equals( function ) && column != null ? column.getJavaType() : Types.VARCHAR ));
+                } else {
+                    final String label = alias != null ? alias : "expr" + expressionCount++;
+                    final Column column = arguments.isEmpty() ? null : resolve( table, getPath( arguments, objectName, objectAlias ));
+                    query.fields.add( new Field( label, new String[]{ label }, null, getFunctionType( function, column )));
+                }
+            } else {
+                int end = 1;
+                while ( end + 1 < selectItem.size() && selectItem.get( end ).isSymbol(".") ) end += 2;
+                final String[] path = getPath( selectItem.subList( 0, end ), objectName, objectAlias );
+                final String alias = end < selectItem.size() ? selectItem.get( selectItem.size() - 1 ).text : null;
+                final Column column = resolve( table, path );
+                final String label = alias != null ? alias : getLabel( table, path );
+                // AGGREGATE QUERIES RETURN THE GROUPED FIELDS BY THEIR NAME, WITHOUT THE RELATIONSHIP
+                final String[] recordPath = alias != null ? new String[]{ alias } : aggregate ? new String[]{ path[ path.length - 1 ] } : path;
+                query.fields.add( new Field( label, recordPath, column, column != null ? column.getJavaType() : Types.VARCHAR ));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * TYPEOF relationship WHEN Type THEN fields ... ELSE fields END returns the fields of the relationship.
+     */
+    private void addTypeOfFields( List<SqlTokenizer.Token> tokens, Table table, Schema schema ){
+        if ( tokens.size() < 2 ) return;
+        final String relationship = tokens.get(1).text;
+        final Set<String> labels = new HashSet<>();
+        Table whenTable = null;
+        boolean inFields = false;
+        for ( int i = 2; i < tokens.size(); i++ ){
+            final SqlTokenizer.Token token = tokens.get(i);
+            if ( token.isKeyword("when") && i + 1 < tokens.size() ){
+                whenTable = schema.getTableIgnoreCase( tokens.get( ++i ).text );
+                inFields = false;
+            } else if ( token.isKeyword("then") || token.isKeyword("else") ){
+                if ( token.isKeyword("else") ) whenTable = null;
+                inFields = true;
+            } else if ( token.isKeyword("end") ){
+                break;
+            } else if ( inFields && token.isIdentifier() ){
+                final String label = relationship + "." + token.text;
+                if ( labels.add( label.toLowerCase() )){
+                    final Column column = whenTable != null ? whenTable.getColumnIgnoreCase( token.text ) : resolve( table, new String[]{ relationship, token.text });
+                    fields.add( new Field( label, new String[]{ relationship, token.text }, column, column != null ? column.getJavaType() : Types.VARCHAR ));
+                }
+            }
+        }
+    }
+
+    private static int findClosingParenthesis( List<SqlTokenizer.Token> tokens, int open ){
+        int depth = 0;
+        for ( int i = open; i < tokens.size(); i++ ){
+            if ( tokens.get(i).isSymbol("(") ) depth++;
+            if ( tokens.get(i).isSymbol(")") && --depth == 0 ) return i;
+        }
+        return tokens.size();
+    }
+
+    /**
+     * The names in a dotted field reference, without the leading object name or alias.
+     */
+    private static String[] getPath( List<SqlTokenizer.Token> tokens, String objectName, String objectAlias ){
+        final List<String> names = new ArrayList<>();
+        for ( SqlTokenizer.Token token : tokens ){
+            if ( !token.isSymbol(".") ) names.add( token.text );
+        }
+        if ( names.size() > 1 && ( names.get(0).equalsIgnoreCase( objectName ) || names.get(0).equalsIgnoreCase( objectAlias ))){
+            names.remove(0);
+        }
+        return names.toArray( new String[0] );
+    }
+
+    /**
+     * Follow the parent relationships to the column. For polymorphic relationships the first target having the field is used.
+     */
+    private static Column resolve( Table table, String[] path ){
+        if ( table == null || path.length == 0 ) return null;
+        if ( path.length == 1 ) return table.getColumnIgnoreCase( path[0] );
+        for ( ForeignKey foreignKey : table.getRelationship( path[0] )){
+            final Column column = resolve( foreignKey.targetTable, Arrays.copyOfRange( path, 1, path.length ));
+            if ( column != null ) return column;
+        }
+        return null;
+    }
+
+    /**
+     * The path with the names written like in the schema, for example Account.Name for account.name.
+     */
+    private static String getLabel( Table table, String[] path ){
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < path.length; i++ ){
+            String name = path[i];
+            if ( table != null ){
+                if ( i < path.length - 1 ){
+                    final List<ForeignKey> relationship = table.getRelationship( name );
+                    name = relationship.isEmpty() ? name : relationship.get(0).relationshipName;
+                    table = relationship.isEmpty() ? null : relationship.get(0).targetTable;
+                } else {
+                    final Column column = table.getColumnIgnoreCase( name );
+                    name = column != null ? column.name : name;
+                }
+            }
+            if ( i > 0 ) sb.append(".");
+            sb.append( name );
+        }
+        return sb.toString();
+    }
+
+    private static int getFunctionType( String function, Column column ){
+        switch ( function ){
+            case "sum":
+            case "avg": return Types.DECIMAL;
+            case "min":
+            case "max": return column != null ? column.getJavaType() : Types.VARCHAR;
+            case "count":
+            case "count_distinct":
+            case "grouping": return Types.INTEGER;
+            default: return function.startsWith("calendar_") || function.startsWith("day_") || function.startsWith("fiscal_") ||
+                    function.startsWith("hour_") || function.startsWith("week_") ? Types.INTEGER : Types.VARCHAR;
+        }
+    }
+}
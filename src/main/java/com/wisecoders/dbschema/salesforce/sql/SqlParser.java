@@ -0,0 +1,512 @@
+package com.wisecoders.dbschema.salesforce.sql;
+
+import com.wisecoders.dbschema.salesforce.sql.SqlTokenizer.Token;
+import com.wisecoders.dbschema.salesforce.sql.SqlTokenizer.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parser for the simple SELECT statements which can be pushed down to Salesforce.
+ * Statements with INNER and LEFT JOINs are parsed, other joins, sub-queries or set operations are not.
+ * Inside the WHERE clause, the expressions which are not understood are kept as Condition.Unknown.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class SqlParser {
+
+    private static final Set<String> UNSUPPORTED_KEYWORDS = new HashSet<>( Arrays.asList( "union", "intersect", "except", "minus", "with", "into" ));
+    private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>( Arrays.asList( "where", "group", "having", "order", "limit", "offset", "fetch", "for", "window", "qualify" ));
+    private static final Set<String> JOIN_KEYWORDS = new HashSet<>( Arrays.asList( "join", "inner", "left", "right", "full", "cross", "outer", "natural", "on" ));
+    private static final Set<String> AGGREGATE_FUNCTIONS = new HashSet<>( Arrays.asList( "count", "sum", "min", "max" ));
+    private static final Set<String> COMPARISON_OPERATORS = new HashSet<>( Arrays.asList( "=", "<>", "!=", "<", "<=", ">", ">=" ));
+
+    private final List<Token> tokens;
+    private int pos = 0;
+
+    private SqlParser( List<Token> tokens ){
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parse a SELECT from one table. Returns null if the statement is not of this kind.
+     */
+    public static SelectStatement parseSelect( String sql ){
+        final List<Token> tokens = SqlTokenizer.tokenize( sql );
+        int selectCount = 0;
+        for ( Token token : tokens ){
+            if ( token.isKeyword("select")) selectCount++;
+            if ( token.type == TokenType.IDENTIFIER && UNSUPPORTED_KEYWORDS.contains( token.text.toLowerCase() )) return null;
+        }
+        if ( selectCount != 1 ) return null;
+        return new SqlParser( tokens ).parseSelect();
+    }
+
+    private SelectStatement parseSelect(){
+        if ( !acceptKeyword("select")) return null;
+        final boolean distinct = acceptKeyword("distinct");
+        final int selectStart = pos;
+        List<SelectStatement.SelectItem> selectItems = parseSelectItems();
+        if ( selectItems == null ){
+            // SKIP THE SELECTED EXPRESSIONS
+            pos = selectStart;
+            int depth = 0;
+            while ( !isEnd() && !( depth == 0 && peek().isKeyword("from"))){
+                final Token token = next();
+                if ( token.isSymbol("(")) depth++;
+                else if ( token.isSymbol(")")) depth--;
+            }
+        }
+        if ( !acceptKeyword("from")) return null;
+        String tableName = parseIdentifier();
+        if ( tableName == null ) return null;
+        if ( acceptSymbol(".")){
+            // SCHEMA.TABLE
+            tableName = parseIdentifier();
+            if ( tableName == null ) return null;
+        }
+        final SelectStatement statement = new SelectStatement( tableName );
+        statement.distinct = distinct;
+        statement.selectItems = selectItems;
+        statement.tableAlias = parseTableAlias();
+        while ( true ){
+            final boolean left = acceptKeyword("left");
+            if ( left ) acceptKeyword("outer");
+            final boolean inner = !left && acceptKeyword("inner");
+            if ( !acceptKeyword("join")){
+                if ( left || inner ) return null;
+                break;
+            }
+            String joinTableName = parseIdentifier();
+            if ( acceptSymbol(".")){
+                joinTableName = parseIdentifier();
+            }
+            if ( joinTableName == null ) return null;
+            final String joinTableAlias = parseTableAlias();
+            if ( !acceptKeyword("on")) return null;
+            final Condition.ColumnRef leftColumn = parseColumnRef();
+            if ( leftColumn == null || !acceptSymbol("=")) return null;
+            final Condition.ColumnRef rightColumn = parseColumnRef();
+            if ( rightColumn == null ) return null;
+            statement.joins.add( new SelectStatement.Join( joinTableName, joinTableAlias, left, leftColumn, rightColumn ));
+        }
+        if ( acceptKeyword("where")){
+            statement.where = parseOr();
+        }
+        if ( acceptKeyword("group")){
+            statement.grouped = true;
+            final int groupStart = pos;
+            statement.groupBy = acceptKeyword("by") ? parseGroupItems() : null;
+            if ( statement.groupBy == null ){
+                pos = groupStart;
+                skipClause();
+            }
+        }
+        if ( acceptKeyword("having")){
+            statement.grouped = true;
+            statement.groupBy = null;
+            skipClause();
+        }
+        if ( acceptKeyword("order")){
+            final int orderStart = pos;
+            statement.orderBy = acceptKeyword("by") ? parseOrderItems() : null;
+            if ( statement.orderBy == null ){
+                pos = orderStart;
+                statement.hasUnknownClauses = true;
+                skipClause();
+            }
+        }
+        if ( acceptKeyword("limit")){
+            statement.limit = parseRowCount();
+            if ( statement.limit == null ) statement.hasUnknownClauses = true;
+        }
+        if ( acceptKeyword("offset")){
+            statement.offset = parseRowCount();
+            if ( statement.offset == null ) statement.hasUnknownClauses = true;
+            if ( !acceptKeyword("rows")) acceptKeyword("row");
+        }
+        if ( acceptKeyword("fetch")){
+            if ( !acceptKeyword("first")) acceptKeyword("next");
+            statement.limit = isKeyword("rows") || isKeyword("row") ? Integer.valueOf( 1 ) : parseRowCount();
+            if ( statement.limit == null ) statement.hasUnknownClauses = true;
+            if ( !( acceptKeyword("rows") || acceptKeyword("row")) || !acceptKeyword("only")) return null;
+        }
+        acceptSymbol(";");
+        // ANY OTHER CLAUSE IS NOT SUPPORTED
+        return isEnd() ? statement : null;
+    }
+
+    private String parseTableAlias(){
+        if ( acceptKeyword("as")){
+            return parseIdentifier();
+        } else if ( !isEnd() && peek().isIdentifier() && !isClauseKeyword( peek() ) &&
+                !( peek().type == TokenType.IDENTIFIER && JOIN_KEYWORDS.contains( peek().text.toLowerCase() ))){
+            return parseIdentifier();
+        }
+        return null;
+    }
+
+    /**
+     * Parse a list of *, alias.*, columns or COUNT, SUM, MIN and MAX of a column, with optional alias. Returns null if there are other expressions.
+     */
+    private List<SelectStatement.SelectItem> parseSelectItems(){
+        final List<SelectStatement.SelectItem> items = new ArrayList<>();
+        do {
+            if ( acceptSymbol("*")){
+                items.add( new SelectStatement.SelectItem( null, null, null, null ));
+            } else if ( pos + 2 < tokens.size() && peek().isIdentifier() && tokens.get( pos + 1 ).isSymbol(".") && tokens.get( pos + 2 ).isSymbol("*")){
+                items.add( new SelectStatement.SelectItem( next().text, null, null, null ));
+                pos += 2;
+            } else {
+                String aggregate = null;
+                Condition.ColumnRef column = null;
+                if ( pos + 1 < tokens.size() && peek().type == TokenType.IDENTIFIER && AGGREGATE_FUNCTIONS.contains( peek().text.toLowerCase() ) &&
+                        tokens.get( pos + 1 ).isSymbol("(")){
+                    aggregate = next().text.toLowerCase();
+                    next();
+                    if ( "count".equals( aggregate ) && acceptSymbol("*")){
+                        // COUNT(*) HAS NO COLUMN
+                    } else {
+                        if ( "count".equals( aggregate ) && acceptKeyword("distinct")) aggregate = "count_distinct";
+                        column = parseColumnRef();
+                        if ( column == null ) return null;
+                    }
+                    if ( !acceptSymbol(")")) return null;
+                } else {
+                    column = parseColumnRef();
+                    if ( column == null ) return null;
+                }
+                String alias = null;
+                if ( acceptKeyword("as")){
+                    alias = parseIdentifier();
+                    if ( alias == null ) return null;
+                } else if ( !isEnd() && peek().isIdentifier() && !peek().isKeyword("from")){
+                    alias = parseIdentifier();
+                }
+                items.add( new SelectStatement.SelectItem( null, column, aggregate, alias ));
+            }
+        } while ( acceptSymbol(","));
+        return isKeyword("from") ? items : null;
+    }
+
+    /**
+     * Parse the GROUP BY columns. Returns null if there are other expressions.
+     */
+    private List<Condition.ColumnRef> parseGroupItems(){
+        final List<Condition.ColumnRef> items = new ArrayList<>();
+        do {
+            final Condition.ColumnRef column = parseColumnRef();
+            if ( column == null ) return null;
+            items.add( column );
+        } while ( acceptSymbol(","));
+        return isEnd() || isKeyword("having") || isClauseKeyword( peek() ) || peek().isSymbol(";") ? items : null;
+    }
+
+    /**
+     * Parse a list of columns with optional ASC, DESC, NULLS FIRST or NULLS LAST. Returns null if there are other expressions.
+     */
+    private List<SelectStatement.OrderItem> parseOrderItems(){
+        final List<SelectStatement.OrderItem> items = new ArrayList<>();
+        do {
+            final Condition.ColumnRef column = parseColumnRef();
+            if ( column == null ) return null;
+            final boolean descending = acceptKeyword("desc");
+            if ( !descending ) acceptKeyword("asc");
+            Boolean nullsFirst = null;
+            if ( acceptKeyword("nulls")){
+                if ( acceptKeyword("first")) nullsFirst = true;
+                else if ( acceptKeyword("last")) nullsFirst = false;
+                else return null;
+            }
+            items.add( new SelectStatement.OrderItem( column, descending, nullsFirst ));
+        } while ( acceptSymbol(","));
+        return isEnd() || isKeyword("limit") || isKeyword("offset") || isKeyword("fetch") || peek().isSymbol(";") ? items : null;
+    }
+
+    /**
+     * Parse the row count of LIMIT, OFFSET or FETCH. Parameters and expressions are skipped and return null.
+     */
+    private Integer parseRowCount(){
+        if ( !isEnd() && peek().type == TokenType.NUMBER ){
+            final int start = pos;
+            try {
+                final Integer count = Integer.valueOf( next().text );
+                if ( isEnd() || isClauseKeyword( peek() ) || isKeyword("rows") || isKeyword("row") || peek().isSymbol(";")){
+                    return count;
+                }
+            } catch ( NumberFormatException ignore ){
+            }
+            pos = start;
+        }
+        skipClause();
+        return null;
+    }
+
+    /**
+     * Skip tokens up to the next ORDER BY, LIMIT, OFFSET or FETCH clause.
+     */
+    private void skipClause(){
+        int depth = 0;
+        while ( !isEnd() ){
+            final Token token = peek();
+            if ( depth == 0 && ( token.isSymbol(";") || token.isKeyword("order") || token.isKeyword("limit") ||
+                    token.isKeyword("offset") || token.isKeyword("fetch") || token.isKeyword("rows") || token.isKeyword("row") )) break;
+            if ( token.isSymbol("(")) depth++;
+            else if ( token.isSymbol(")")) depth--;
+            next();
+        }
+    }
+
+    private Condition parseOr(){
+        final List<Condition> operands = new ArrayList<>();
+        operands.add( parseAnd() );
+        while ( acceptKeyword("or")){
+            operands.add( parseAnd() );
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.Or( operands );
+    }
+
+    private Condition parseAnd(){
+        final List<Condition> operands = new ArrayList<>();
+        operands.add( parseNot() );
+        while ( acceptKeyword("and")){
+            operands.add( parseNot() );
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.And( operands );
+    }
+
+    private Condition parseNot(){
+        if ( acceptKeyword("not")){
+            final Condition condition = parseNot();
+            if ( condition instanceof Condition.BooleanColumn ){
+                final Condition.BooleanColumn booleanColumn = (Condition.BooleanColumn)condition;
+                return new Condition.BooleanColumn( booleanColumn.column, !booleanColumn.value );
+            }
+            return new Condition.Unknown();
+        }
+        return parsePredicate();
+    }
+
+    private Condition parsePredicate(){
+        final int start = pos;
+        if ( acceptSymbol("(")){
+            final Condition condition = parseOr();
+            if ( acceptSymbol(")")) return condition;
+            pos = start;
+            return skipUnknown();
+        }
+        final Condition.Literal literal = parseLiteral();
+        if ( literal != null ){
+            // LITERAL OPERATOR COLUMN
+            if ( !isEnd() && peek().type == TokenType.SYMBOL && COMPARISON_OPERATORS.contains( peek().text )){
+                final String operator = next().text;
+                final Condition.ColumnRef column = parseColumnRef();
+                if ( column != null && isConditionEnd() ){
+                    return new Condition.Comparison( column, reverse( operator ), literal );
+                }
+            }
+        } else {
+            final Condition.ColumnRef column = parseColumnRef();
+            if ( column != null ){
+                final Condition condition = parseColumnPredicate( column );
+                if ( condition != null && isConditionEnd() ) return condition;
+            }
+        }
+        pos = start;
+        return skipUnknown();
+    }
+
+    private Condition parseColumnPredicate( Condition.ColumnRef column ){
+        if ( isConditionEnd() ){
+            return new Condition.BooleanColumn( column, true );
+        }
+        final Token token = peek();
+        if ( token.type == TokenType.SYMBOL && COMPARISON_OPERATORS.contains( token.text )){
+            next();
+            final Condition.Literal literal = parseLiteral();
+            if ( literal == null ) return null;
+            if ( literal.type == Condition.LiteralType.BOOLEAN && ( "=".equals( token.text ))) {
+                return new Condition.BooleanColumn( column, Boolean.parseBoolean( literal.value ));
+            }
+            return new Condition.Comparison( column, token.text, literal );
+        }
+        if ( acceptKeyword("is")){
+            final boolean not = acceptKeyword("not");
+            if ( acceptKeyword("null")) return new Condition.IsNull( column, not );
+            if ( acceptKeyword("true")) return new Condition.BooleanColumn( column, !not );
+            if ( acceptKeyword("false")) return new Condition.BooleanColumn( column, not );
+            return null;
+        }
+        final boolean not = acceptKeyword("not");
+        if ( acceptKeyword("in")){
+            if ( !acceptSymbol("(")) return null;
+            final List<Condition.Literal> literals = new ArrayList<>();
+            do {
+                final Condition.Literal literal = parseLiteral();
+                if ( literal == null ) return null;
+                literals.add( literal );
+            } while ( acceptSymbol(","));
+            return acceptSymbol(")") ? new Condition.In( column, literals, not ) : null;
+        }
+        if ( acceptKeyword("like")){
+            final Condition.Literal literal = parseLiteral();
+            if ( literal == null || literal.type != Condition.LiteralType.STRING || not || isKeyword("escape")) return null;
+            return new Condition.Like( column, literal.value );
+        }
+        if ( acceptKeyword("between")){
+            final Condition.Literal from = parseLiteral();
+            if ( from == null || !acceptKeyword("and")) return null;
+            final Condition.Literal to = parseLiteral();
+            if ( to == null || not ) return null;
+            final List<Condition> operands = new ArrayList<>();
+            operands.add( new Condition.Comparison( column, ">=", from ));
+            operands.add( new Condition.Comparison( column, "<=", to ));
+            return new Condition.And( operands );
+        }
+        return null;
+    }
+
+    /**
+     * Skip an expression which is not understood, up to the next AND, OR, closing bracket or clause.
+     * BETWEEN .. AND .. and CASE .. END are skipped as a whole.
+     */
+    private Condition skipUnknown(){
+        int depth = 0;
+        boolean inBetween = false;
+        while ( !isEnd() ){
+            final Token token = peek();
+            if ( depth == 0 ){
+                if ( token.isSymbol(")") || token.isSymbol(";") || isClauseKeyword( token ) || token.isKeyword("or")) break;
+                if ( token.isKeyword("and")){
+                    if ( !inBetween ) break;
+                    inBetween = false;
+                }
+                if ( token.isKeyword("between")) inBetween = true;
+            }
+            if ( token.isSymbol("(") || token.isKeyword("case")) depth++;
+            else if ( token.isSymbol(")") || token.isKeyword("end")) depth--;
+            next();
+        }
+        return new Condition.Unknown();
+    }
+
+    private Condition.ColumnRef parseColumnRef(){
+        if ( isEnd() || !peek().isIdentifier() || isReserved( peek() )) return null;
+        final int start = pos;
+        String qualifier = null;
+        String name = parseIdentifier();
+        if ( acceptSymbol(".")){
+            qualifier = name;
+            name = parseIdentifier();
+            if ( name == null ){
+                pos = start;
+                return null;
+            }
+        }
+        if ( !isEnd() && ( peek().isSymbol("(") || peek().isSymbol("."))){
+            // FUNCTION CALL OR LONGER PATH
+            pos = start;
+            return null;
+        }
+        return new Condition.ColumnRef( qualifier, name );
+    }
+
+    private Condition.Literal parseLiteral(){
+        if ( isEnd() ) return null;
+        final Token token = peek();
+        if ( token.type == TokenType.STRING ){
+            next();
+            return new Condition.Literal( Condition.LiteralType.STRING, token.text );
+        }
+        if ( token.type == TokenType.NUMBER ){
+            next();
+            return new Condition.Literal( Condition.LiteralType.NUMBER, token.text );
+        }
+        if ( token.isSymbol("-") && pos + 1 < tokens.size() && tokens.get( pos + 1 ).type == TokenType.NUMBER ){
+            next();
+            return new Condition.Literal( Condition.LiteralType.NUMBER, "-" + next().text );
+        }
+        if ( token.isKeyword("true") || token.isKeyword("false")){
+            next();
+            return new Condition.Literal( Condition.LiteralType.BOOLEAN, token.text.toLowerCase() );
+        }
+        if (( token.isKeyword("date") || token.isKeyword("timestamp")) && pos + 1 < tokens.size() && tokens.get( pos + 1 ).type == TokenType.STRING ){
+            next();
+            return new Condition.Literal( token.isKeyword("date") ? Condition.LiteralType.DATE : Condition.LiteralType.TIMESTAMP, next().text );
+        }
+        return null;
+    }
+
+    private String parseIdentifier(){
+        if ( !isEnd() && peek().isIdentifier() ){
+            return next().text;
+        }
+        return null;
+    }
+
+    private boolean isConditionEnd(){
+        if ( isEnd() ) return true;
+        final Token token = peek();
+        return token.isKeyword("and") || token.isKeyword("or") || token.isSymbol(")") || token.isSymbol(";") || isClauseKeyword( token );
+    }
+
+    private static boolean isClauseKeyword( Token token ){
+        return token.type == TokenType.IDENTIFIER && CLAUSE_KEYWORDS.contains( token.text.toLowerCase() );
+    }
+
+    private static boolean isReserved( Token token ){
+        if ( token.type != TokenType.IDENTIFIER ) return false;
+        switch ( token.text.toLowerCase() ){
+            case "and": case "or": case "not": case "null": case "case": case "exists": case "select": case "from":
+                return true;
+            default:
+                return isClauseKeyword( token );
+        }
+    }
+
+    private static String reverse( String operator ){
+        switch ( operator ){
+            case "<": return ">";
+            case "<=": return ">=";
+            case ">": return "<";
+            case ">=": return "<=";
+            default: return operator;
+        }
+    }
+
+    private boolean isEnd(){
+        return pos >= tokens.size();
+    }
+
+    private Token peek(){
+        return tokens.get( pos );
+    }
+
+    private Token next(){
+        return tokens.get( pos++ );
+    }
+
+    private boolean isKeyword( String keyword ){
+        return !isEnd() && peek().isKeyword( keyword );
+    }
+
+    private boolean acceptKeyword( String keyword ){
+        if ( isKeyword( keyword )){
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptSymbol( String symbol ){
+        if ( !isEnd() && peek().isSymbol( symbol )){
+            pos++;
+            return true;
+        }
+        return false;
+    }
+}
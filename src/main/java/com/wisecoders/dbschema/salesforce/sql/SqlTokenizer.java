@@ -0,0 +1,106 @@
+package com.wisecoders.dbschema.salesforce.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split a SQL statement into tokens. Comments are skipped, quoted identifiers and string literals are unquoted.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class SqlTokenizer {
+
+    public enum TokenType { IDENTIFIER, QUOTED_IDENTIFIER, STRING, NUMBER, SYMBOL }
+
+    public static class Token {
+        public final TokenType type;
+        public final String text;
+
+        Token( TokenType type, String text ){
+            this.type = type;
+            this.text = text;
+        }
+
+        /**
+         * Unquoted identifier equal to the given keyword, case-insensitive.
+         */
+        public boolean isKeyword( String keyword ){
+            return type == TokenType.IDENTIFIER && text.equalsIgnoreCase( keyword );
+        }
+
+        public boolean isSymbol( String symbol ){
+            return type == TokenType.SYMBOL && text.equals( symbol );
+        }
+
+        public boolean isIdentifier(){
+            return type == TokenType.IDENTIFIER || type == TokenType.QUOTED_IDENTIFIER;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    public static List<Token> tokenize( String sql ){
+        final List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        final int length = sql.length();
+        while ( i < length ){
+            final char c = sql.charAt(i);
+            if ( Character.isWhitespace( c )){
+                i++;
+            } else if ( c == '-' && i + 1 < length && sql.charAt(i+1) == '-' ){
+                while ( i < length && sql.charAt(i) != '\n' ) i++;
+            } else if ( c == '/' && i + 1 < length && sql.charAt(i+1) == '*' ){
+                final int end = sql.indexOf( "*/", i + 2 );
+                i = end < 0 ? length : end + 2;
+            } else if ( c == '\'' || c == '"' ){
+                final StringBuilder sb = new StringBuilder();
+                i++;
+                while ( i < length ){
+                    if ( sql.charAt(i) == c ){
+                        if ( i + 1 < length && sql.charAt(i+1) == c ){
+                            sb.append( c );
+                            i += 2;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        sb.append( sql.charAt(i++) );
+                    }
+                }
+                i++;
+                tokens.add( new Token( c == '\'' ? TokenType.STRING : TokenType.QUOTED_IDENTIFIER, sb.toString() ));
+            } else if ( Character.isDigit( c ) || ( c == '.' && i + 1 < length && Character.isDigit( sql.charAt(i+1)))){
+                final int start = i;
+                while ( i < length && ( Character.isDigit( sql.charAt(i)) || sql.charAt(i) == '.' )) i++;
+                if ( i < length && ( sql.charAt(i) == 'e' || sql.charAt(i) == 'E' )){
+                    i++;
+                    if ( i < length && ( sql.charAt(i) == '+' || sql.charAt(i) == '-' )) i++;
+                    while ( i < length && Character.isDigit( sql.charAt(i))) i++;
+                }
+                tokens.add( new Token( TokenType.NUMBER, sql.substring( start, i )));
+            } else if ( Character.isLetter( c ) || c == '_' || c == '$' ){
+                final int start = i;
+                while ( i < length && ( Character.isLetterOrDigit( sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$' )) i++;
+                tokens.add( new Token( TokenType.IDENTIFIER, sql.substring( start, i )));
+            } else if ( i + 1 < length && isTwoCharSymbol( c, sql.charAt(i+1) )){
+                tokens.add( new Token( TokenType.SYMBOL, sql.substring( i, i + 2 )));
+                i += 2;
+            } else {
+                tokens.add( new Token( TokenType.SYMBOL, String.valueOf( c )));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isTwoCharSymbol( char c1, char c2 ){
+        return ( c1 == '<' && ( c2 == '=' || c2 == '>' )) ||
+                ( c1 == '>' && c2 == '=' ) ||
+                ( c1 == '!' && c2 == '=' ) ||
+                ( c1 == '|' && c2 == '|' );
+    }
+}
@@ -0,0 +1,182 @@
+package com.wisecoders.dbschema.salesforce;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded HTTP server answering the Bulk API 2.0 query endpoints, used to test and benchmark the Bulk API transfer offline.
+ * Objects are registered with a number of rows; the field values are produced by a RowSource.
+ * Jobs stay InProgress for jobMillis, results are returned in pages of pageRows rows, each delayed by pageMillis.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class BulkApiStub implements AutoCloseable {
+
+    public static final String SESSION_ID = "stub-session";
+
+    private static final Pattern PATH = Pattern.compile( "/services/data/v[\\d.]+/jobs/query(?:/(\\w+)(/results)?)?" );
+    private static final Pattern QUERY = Pattern.compile( "\"query\"\\s*:\\s*\"SELECT (.+) FROM (\\w+)\"", Pattern.CASE_INSENSITIVE );
+
+    public interface RowSource {
+        /**
+         * The value of the field in the given row, null for an empty value.
+         */
+        String getValue( String object, String field, int row );
+    }
+
+    private static class Job {
+        final String object;
+        final String[] fields;
+        final long completedAt;
+
+        Job( String object, String[] fields, long completedAt ){
+            this.object = object;
+            this.fields = fields;
+            this.completedAt = completedAt;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final RowSource rowSource;
+    private final Map<String,Integer> objects = new ConcurrentHashMap<>();
+    private final Map<String,Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobCount = new AtomicInteger();
+    public final AtomicInteger resultRequests = new AtomicInteger();
+    public volatile int pageRows = 50000;
+    public volatile long jobMillis = 0, pageMillis = 0;
+
+    public BulkApiStub( RowSource rowSource ) throws IOException {
+        this.rowSource = rowSource;
+        this.server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/services/data/", this::handle );
+        server.setExecutor( executor );
+        server.start();
+    }
+
+    public void addObject( String name, int rows ){
+        objects.put( name, rows );
+    }
+
+    /**
+     * Service endpoint to set in the ConnectorConfig, as the partner API login would return it.
+     */
+    public String getServiceEndpoint(){
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/services/Soap/u/61.0/00D000000000001";
+    }
+
+    private void handle( HttpExchange exchange ) throws IOException {
+        try {
+            final Matcher matcher = PATH.matcher( exchange.getRequestURI().getPath() );
+            if ( !( "Bearer " + SESSION_ID ).equals( exchange.getRequestHeaders().getFirst("Authorization") )){
+                send( exchange, 401, "[{\"errorCode\":\"INVALID_SESSION_ID\",\"message\":\"Session expired or invalid\"}]" );
+            } else if ( !matcher.matches() ){
+                send( exchange, 404, "[{\"errorCode\":\"NOT_FOUND\",\"message\":\"The requested resource does not exist\"}]" );
+            } else if ( matcher.group(1) == null && "POST".equals( exchange.getRequestMethod() )){
+                createJob( exchange );
+            } else if ( matcher.group(1) != null && !jobs.containsKey( matcher.group(1) )){
+                send( exchange, 404, "[{\"errorCode\":\"NOT_FOUND\",\"message\":\"Job not found\"}]" );
+            } else if ( "DELETE".equals( exchange.getRequestMethod() )){
+                jobs.remove( matcher.group(1) );
+                exchange.sendResponseHeaders( 204, -1 );
+            } else if ( matcher.group(2) != null ){
+                sendResults( exchange, matcher.group(1) );
+            } else {
+                final Job job = jobs.get( matcher.group(1) );
+                send( exchange, 200, "{\"id\":\"" + matcher.group(1) + "\",\"operation\":\"query\",\"object\":\"" + job.object +
+                        "\",\"state\":\"" + ( System.currentTimeMillis() >= job.completedAt ? "JobComplete" : "InProgress" ) + "\"}" );
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void createJob( HttpExchange exchange ) throws IOException {
+        final String body = new String( exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8 );
+        final Matcher matcher = QUERY.matcher( body );
+        if ( !matcher.find() || !objects.containsKey( matcher.group(2) )){
+            send( exchange, 400, "[{\"errorCode\":\"INVALIDJOB\",\"message\":\"Unsupported query: " + body.replace("\"", "'") + "\"}]" );
+            return;
+        }
+        final String[] fields = matcher.group(1).split(",");
+        for ( int i = 0; i < fields.length; i++ ){
+            fields[i] = fields[i].trim();
+        }
+        final String jobId = String.format( "750%012d", jobCount.incrementAndGet() );
+        jobs.put( jobId, new Job( matcher.group(2), fields, System.currentTimeMillis() + jobMillis ));
+        send( exchange, 200, "{\"id\":\"" + jobId + "\",\"operation\":\"query\",\"object\":\"" + matcher.group(2) + "\",\"state\":\"UploadComplete\"}" );
+    }
+
+    private void sendResults( HttpExchange exchange, String jobId ) throws IOException {
+        resultRequests.incrementAndGet();
+        final Job job = jobs.get( jobId );
+        final String query = exchange.getRequestURI().getQuery();
+        final int from = query != null && query.startsWith("locator=") ? Integer.parseInt( query.substring( "locator=".length() )) : 0;
+        final int rows = objects.get( job.object );
+        final int to = Math.min( rows, from + pageRows );
+        if ( pageMillis > 0 ){
+            try {
+                Thread.sleep( pageMillis );
+            } catch ( InterruptedException ex ){
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.getResponseHeaders().add( "Content-Type", "text/csv" );
+        exchange.getResponseHeaders().add( "Sforce-Locator", to < rows ? String.valueOf( to ) : "null" );
+        exchange.getResponseHeaders().add( "Sforce-NumberOfRecords", String.valueOf( to - from ));
+        exchange.sendResponseHeaders( 200, 0 );
+        try ( Writer writer = new OutputStreamWriter( exchange.getResponseBody(), StandardCharsets.UTF_8 )){
+            writeRecord( writer, job.fields );
+            final String[] values = new String[ job.fields.length ];
+            for ( int row = from; row < to; row++ ){
+                for ( int i = 0; i < values.length; i++ ){
+                    values[i] = rowSource.getValue( job.object, job.fields[i], row );
+                }
+                writeRecord( writer, values );
+            }
+        }
+    }
+
+    private static void writeRecord( Writer writer, String[] values ) throws IOException {
+        for ( int i = 0; i < values.length; i++ ){
+            if ( i > 0 ) writer.write(',');
+            if ( values[i] != null ){
+                writer.write('"');
+                writer.write( values[i].replace("\"", "\"\"") );
+                writer.write('"');
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static void send( HttpExchange exchange, int status, String json ) throws IOException {
+        final byte[] bytes = json.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().add( "Content-Type", "application/json" );
+        exchange.sendResponseHeaders( status, bytes.length );
+        try ( OutputStream out = exchange.getResponseBody() ){
+            out.write( bytes );
+        }
+    }
+
+    @Override
+    public void close(){
+        server.stop( 0 );
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.wisecoders.dbschema.salesforce;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectorConfig;
+import com.wisecoders.dbschema.salesforce.io.TransferReader;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Load a table using the Bulk API 2.0 query path, against the embedded BulkApiStub. Runs without a Salesforce account.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestBulkQuery {
+
+    private static final int ROWS = 12345;
+    private static final String SPECIAL_NAME = "Quote \"q\", comma\nand new line";
+
+    private BulkApiStub stub;
+    private SalesforceConnection connection;
+
+    @Before
+    public void startStub() throws Exception {
+        stub = new BulkApiStub( ( object, field, row ) -> {
+            switch ( field ){
+                case "Id": return String.format( "006%012dAAA", row );
+                case "Name": return row == 7 ? SPECIAL_NAME : "Name " + row;
+                case "Amount": return row % 10 == 0 ? null : row + ".25";
+                case "IsWon": return String.valueOf( row % 2 == 0 );
+                case "CloseDate": return "2024-01-" + ( 10 + row % 18 );
+                case "CreatedDate": return "2024-01-02T03:04:05.000Z";
+                default: return null;
+            }
+        });
+        stub.addObject( "Opportunity", ROWS );
+        stub.pageRows = 5000;
+        stub.jobMillis = 300;
+
+        final ConnectorConfig config = new ConnectorConfig();
+        config.setManualLogin( true );
+        config.setSessionId( BulkApiStub.SESSION_ID );
+        config.setServiceEndpoint( stub.getServiceEndpoint() );
+        final Map<String,String> parameters = new HashMap<>();
+        parameters.put( "bulk", "Opportunity" );
+        // THE CACHE IS NOT UNDER TEST, NOTHING IS WRITTEN TO DISK
+        parameters.put( "cache", "memory" );
+        connection = new SalesforceConnection( "bulk-test-" + System.nanoTime(), new PartnerConnection( config ), parameters );
+    }
+
+    @After
+    public void stopStub() throws SQLException {
+        if ( connection != null ) connection.close();
+        if ( stub != null ) stub.close();
+    }
+
+    @Test
+    public void testBulkTransfer() throws SQLException {
+        final Table table = new Table( "Opportunity", true, null );
+        table.createColumn( "Id", "id", 18, 0, 0, false, false, null );
+        table.createColumn( "Name", "string", 120, 0, 0, true, false, null );
+        table.createColumn( "Amount", "currency", 0, 18, 2, true, false, null );
+        table.createColumn( "IsWon", "boolean", 0, 0, 0, true, false, null );
+        table.createColumn( "CloseDate", "date", 0, 0, 0, true, false, null );
+        table.createColumn( "CreatedDate", "datetime", 0, 0, 0, true, false, null );
+        table.createColumn( "BillingAddress", "address", 0, 0, 0, true, false, null );
+        connection.getSchemaDef().addTable( table );
+
+        new TransferReader( connection ).transferData( table );
+
+        assertTrue( table.isLoaded() );
+        assertEquals( 3, stub.resultRequests.get() );
+        try ( Statement st = connection.h2Connection.createStatement() ){
+            ResultSet rs = st.executeQuery( "select count(*), count(\"Amount\"), sum(\"Amount\"), count(\"BillingAddress\") from \"Opportunity\"" );
+            assertTrue( rs.next() );
+            assertEquals( ROWS, rs.getInt(1) );
+            assertEquals( ROWS - ( ROWS + 9 ) / 10, rs.getInt(2) );
+            BigDecimal sum = BigDecimal.ZERO;
+            for ( int row = 0; row < ROWS; row++ ){
+                if ( row % 10 != 0 ) sum = sum.add( new BigDecimal( row + ".25" ));
+            }
+            assertEquals( 0, sum.compareTo( rs.getBigDecimal(3) ));
+            assertEquals( 0, rs.getInt(4) );
+
+            rs = st.executeQuery( "select \"Name\", \"IsWon\", \"CloseDate\", \"CreatedDate\" from \"Opportunity\" where \"Id\" = '006000000000007AAA'" );
+            assertTrue( rs.next() );
+            assertEquals( SPECIAL_NAME, rs.getString(1) );
+            assertFalse( rs.getBoolean(2) );
+            assertEquals( "2024-01-17", rs.getDate(3).toString() );
+            assertNotNull( rs.getObject(4) );
+        }
+    }
+
+}
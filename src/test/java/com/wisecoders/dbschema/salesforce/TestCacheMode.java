@@ -0,0 +1,133 @@
+package com.wisecoders.dbschema.salesforce;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectorConfig;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import static com.wisecoders.dbschema.salesforce.JdbcDriver.LOGGER;
+import static org.junit.Assert.*;
+
+/**
+ * Load a join of three tables in the file, memory and temp cache modes, against the embedded BulkApiStub.
+ * The results must be the same; the load times are logged as a benchmark of the cache modes.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestCacheMode {
+
+    private static final int ACCOUNTS = 10000, CONTACTS = 40000, OPPORTUNITIES = 40000;
+    private static final String JOIN_QUERY = "select a.Name, count(distinct c.Id), sum(o.Amount) from Account a " +
+            "join Contact c on c.AccountId = a.Id join Opportunity o on o.AccountId = a.Id " +
+            "where a.Industry = 'Energy' group by a.Name order by a.Name";
+
+    private BulkApiStub stub;
+    private final List<SalesforceConnection> connections = new ArrayList<>();
+    private final List<File> databaseFiles = new ArrayList<>();
+
+    @Before
+    public void startStub() throws Exception {
+        stub = new BulkApiStub( ( object, field, row ) -> {
+            switch ( field ){
+                case "Id": return String.format( "%s%012dAAA", object.equals("Account") ? "001" : object.equals("Contact") ? "003" : "006", row );
+                case "Name": return object + " " + row;
+                case "Industry": return row % 4 == 0 ? "Energy" : "Retail";
+                case "AccountId": return String.format( "001%012dAAA", row % ACCOUNTS );
+                case "Email": return "contact" + row + "@example.com";
+                case "Amount": return ( row % 100 ) + ".50";
+                default: return null;
+            }
+        });
+        stub.addObject( "Account", ACCOUNTS );
+        stub.addObject( "Contact", CONTACTS );
+        stub.addObject( "Opportunity", OPPORTUNITIES );
+    }
+
+    @After
+    public void stopStub() throws SQLException {
+        for ( SalesforceConnection connection : connections ){
+            connection.close();
+        }
+        if ( stub != null ) stub.close();
+        for ( File file : databaseFiles ){
+            assertTrue( !file.exists() || file.delete() );
+        }
+    }
+
+    @Test
+    public void testCacheModes() throws Exception {
+        final List<String> fileResult = executeJoin( "file" );
+        assertEquals( ACCOUNTS / 4, fileResult.size() );
+        assertEquals( fileResult, executeJoin( "memory" ));
+        assertEquals( fileResult, executeJoin( "temp" ));
+    }
+
+    private List<String> executeJoin( String cacheMode ) throws Exception {
+        final ConnectorConfig config = new ConnectorConfig();
+        config.setManualLogin( true );
+        config.setSessionId( BulkApiStub.SESSION_ID );
+        config.setServiceEndpoint( stub.getServiceEndpoint() );
+        final Map<String,String> parameters = new HashMap<>();
+        parameters.put( "bulk", "*" );
+        parameters.put( "cache", cacheMode );
+        // COMPLETE TABLE LOADS, ONE AFTER THE OTHER, ON THE SAME STUB SESSION
+        parameters.put( "pushdown", "false" );
+        parameters.put( "loadthreads", "1" );
+        final String databaseName = "cache-mode-test-" + System.nanoTime();
+        final SalesforceConnection connection = new SalesforceConnection( databaseName, new PartnerConnection( config ), parameters );
+        connections.add( connection );
+        if ( "file".equals( cacheMode )){
+            // THE MEMORY DATABASE IS DROPPED WHEN THE CONNECTION IS CLOSED, THE TEMP ONE WHEN THE TEST EXITS
+            final File directory = new File( System.getProperty("user.home"), ".DbSchema/jdbc-salesforce-cache" );
+            databaseFiles.add( new File( directory, databaseName + ".mv.db" ));
+            databaseFiles.add( new File( directory, databaseName + ".trace.db" ));
+        }
+
+        final Table account = new Table( "Account", true, null );
+        account.createColumn( "Id", "id", 18, 0, 0, false, false, null );
+        account.createColumn( "Name", "string", 255, 0, 0, true, false, null );
+        account.createColumn( "Industry", "picklist", 40, 0, 0, true, false, null );
+        final Table contact = new Table( "Contact", true, null );
+        contact.createColumn( "Id", "id", 18, 0, 0, false, false, null );
+        contact.createForeignKey( contact.createColumn( "AccountId", "reference", 18, 0, 0, true, false, null ), account );
+        contact.createColumn( "Email", "email", 80, 0, 0, true, false, null );
+        final Table opportunity = new Table( "Opportunity", true, null );
+        opportunity.createColumn( "Id", "id", 18, 0, 0, false, false, null );
+        opportunity.createForeignKey( opportunity.createColumn( "AccountId", "reference", 18, 0, 0, true, false, null ), account );
+        opportunity.createColumn( "Amount", "currency", 0, 18, 2, true, false, null );
+        connection.getSchemaDef().addTable( account );
+        connection.getSchemaDef().addTable( contact );
+        connection.getSchemaDef().addTable( opportunity );
+
+        final List<String> result = new ArrayList<>();
+        final long loadStart = System.currentTimeMillis();
+        try ( Statement st = connection.createStatement() ){
+            // THE FIRST EXECUTION LOADS THE THREE TABLES, THE SECOND ONE READS ONLY THE CACHE
+            st.executeQuery( JOIN_QUERY ).close();
+            final long queryStart = System.currentTimeMillis();
+            try ( ResultSet rs = st.executeQuery( JOIN_QUERY ) ){
+                while ( rs.next() ){
+                    result.add( rs.getString(1) + " " + rs.getLong(2) + " " + rs.getBigDecimal(3) );
+                }
+            }
+            LOGGER.log(Level.INFO, "Cache " + cacheMode + ": load and join " + ( queryStart - loadStart ) + " ms, join from cache " +
+                    ( System.currentTimeMillis() - queryStart ) + " ms" );
+        }
+        assertTrue( account.isLoaded() && contact.isLoaded() && opportunity.isLoaded() );
+        return result;
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.wisecoders.dbschema.salesforce;
+
+import com.sforce.soap.partner.DescribeGlobalResult;
+import com.sforce.soap.partner.DescribeGlobalSObjectResult;
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.Field;
+import com.sforce.soap.partner.FieldType;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.wisecoders.dbschema.salesforce.io.TransferReader;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Load the same table from many connections at the same time. The table must be loaded once, the other connections wait
+ * for that load and use its result, or fail with its error, or give up after 'loadtimeout' seconds.
+ * Runs without a Salesforce account, the describe and query calls are answered locally.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestLoadCoordination {
+
+    private static final int ROWS = 500, CONNECTIONS = 8;
+
+    private final List<SalesforceConnection> connections = Collections.synchronizedList( new ArrayList<>() );
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private static class QueryPartnerConnection extends PartnerConnection {
+
+        final AtomicInteger queries = new AtomicInteger();
+        // THE QUERY WAITS UNTIL THE TEST RELEASES IT, SO THE OTHER CONNECTIONS FIND THE TABLE BEING LOADED
+        final CountDownLatch release = new CountDownLatch( 1 );
+        volatile boolean fail = false;
+
+        QueryPartnerConnection( ConnectorConfig config ) throws ConnectionException {
+            super( config );
+        }
+
+        @Override
+        public DescribeGlobalResult describeGlobal(){
+            final DescribeGlobalSObjectResult object = new DescribeGlobalSObjectResult();
+            object.setName( "Account" );
+            object.setLabel( "Account" );
+            object.setQueryable( true );
+            final DescribeGlobalResult result = new DescribeGlobalResult();
+            result.setSobjects( new DescribeGlobalSObjectResult[]{ object } );
+            return result;
+        }
+
+        @Override
+        public DescribeSObjectResult[] describeSObjects( String[] names ){
+            final Field id = new Field();
+            id.setName( "Id" );
+            id.setType( FieldType.id );
+            id.setLength( 18 );
+            id.setFilterable( true );
+            final Field name = new Field();
+            name.setName( "Name" );
+            name.setType( FieldType.string );
+            name.setLength( 80 );
+            name.setNillable( true );
+            name.setFilterable( true );
+            final DescribeSObjectResult result = new DescribeSObjectResult();
+            result.setName( "Account" );
+            result.setFields( new Field[]{ id, name } );
+            return new DescribeSObjectResult[]{ result };
+        }
+
+        @Override
+        public QueryResult query( String soql ) throws ConnectionException {
+            queries.incrementAndGet();
+            try {
+                if ( !release.await( 60, TimeUnit.SECONDS )) throw new ConnectionException("Query not released");
+            } catch ( InterruptedException ex ){
+                Thread.currentThread().interrupt();
+                throw new ConnectionException("Interrupted");
+            }
+            if ( fail ){
+                throw new ConnectionException("Query failed");
+            }
+            final SObject[] records = new SObject[ ROWS ];
+            for ( int i = 0; i < ROWS; i++ ){
+                records[i] = new SObject();
+                records[i].setType( "Account" );
+                records[i].addField( "Id", null );
+                records[i].addField( "Id", String.format( "001%012dAAA", i ));
+                records[i].addField( "Name", "Account " + i );
+            }
+            final QueryResult result = new QueryResult();
+            result.setRecords( records );
+            result.setSize( ROWS );
+            result.setDone( true );
+            return result;
+        }
+    }
+
+    @After
+    public void closeConnections() throws SQLException {
+        executor.shutdownNow();
+        for ( SalesforceConnection connection : connections ){
+            connection.close();
+        }
+    }
+
+    private QueryPartnerConnection createPartnerConnection() throws ConnectionException {
+        final ConnectorConfig config = new ConnectorConfig();
+        config.setManualLogin( true );
+        config.setSessionId( "load-session" );
+        config.setServiceEndpoint( "http://127.0.0.1:1/services/Soap/u/61.0/00D000000000001" );
+        return new QueryPartnerConnection( config );
+    }
+
+    private SalesforceConnection openConnection( String databaseName, PartnerConnection partnerConnection, int loadTimeout ) throws SQLException {
+        final Map<String,String> parameters = new HashMap<>();
+        parameters.put( "cache", "memory" );
+        if ( loadTimeout > 0 ) parameters.put( "loadtimeout", String.valueOf( loadTimeout ));
+        final SalesforceConnection connection = new SalesforceConnection( databaseName, partnerConnection, parameters );
+        connections.add( connection );
+        connection.ensureColumnsAreLoaded();
+        return connection;
+    }
+
+    /**
+     * Start the load of the table in each connection, and release the Salesforce query once all other loads are waiting.
+     */
+    private List<Future<?>> loadConcurrently( String databaseName, QueryPartnerConnection partnerConnection ) throws Exception {
+        final List<Future<?>> futures = new ArrayList<>();
+        Table table = null;
+        for ( int i = 0; i < CONNECTIONS; i++ ){
+            final SalesforceConnection connection = openConnection( databaseName, partnerConnection, 0 );
+            table = connection.getSchemaDef().getTable( "Account" );
+            final Table account = table;
+            futures.add( executor.submit( () -> {
+                new TransferReader( connection ).transferData( account, account.columns );
+                return null;
+            }));
+        }
+        final long end = System.currentTimeMillis() + 30000;
+        while ( table.loadWaits.get() < CONNECTIONS - 1 && System.currentTimeMillis() < end ){
+            Thread.sleep( 10 );
+        }
+        assertEquals( CONNECTIONS - 1, table.loadWaits.get() );
+        partnerConnection.release.countDown();
+        return futures;
+    }
+
+    @Test
+    public void testSingleLoad() throws Exception {
+        final QueryPartnerConnection partnerConnection = createPartnerConnection();
+        final String databaseName = "load-test-" + System.nanoTime();
+        for ( Future<?> future : loadConcurrently( databaseName, partnerConnection )){
+            future.get( 60, TimeUnit.SECONDS );
+        }
+        assertEquals( 1, partnerConnection.queries.get() );
+        final Table table = connections.get(0).getSchemaDef().getTable( "Account" );
+        assertTrue( table.isFullyLoaded() );
+        assertEquals( 0, table.getFailedLoads() );
+        for ( SalesforceConnection connection : connections ){
+            try ( Statement st = connection.h2Connection.createStatement();
+                  ResultSet rs = st.executeQuery( "select count(*) from \"Account\"" ) ){
+                assertTrue( rs.next() );
+                assertEquals( ROWS, rs.getInt(1) );
+            }
+        }
+    }
+
+    @Test
+    public void testFailedLoadReachesWaiters() throws Exception {
+        final QueryPartnerConnection partnerConnection = createPartnerConnection();
+        partnerConnection.fail = true;
+        final String databaseName = "load-test-" + System.nanoTime();
+        int waiterErrors = 0;
+        for ( Future<?> future : loadConcurrently( databaseName, partnerConnection )){
+            try {
+                future.get( 60, TimeUnit.SECONDS );
+                fail( "The load should fail" );
+            } catch ( ExecutionException ex ){
+                assertTrue( ex.getCause() instanceof SQLException );
+                if ( ex.getCause().getMessage().contains( "failed in another connection" )){
+                    waiterErrors++;
+                }
+            }
+        }
+        // THE WAITING CONNECTIONS DO NOT RETRY THE LOAD
+        assertEquals( 1, partnerConnection.queries.get() );
+        assertEquals( CONNECTIONS - 1, waiterErrors );
+        final Table table = connections.get(0).getSchemaDef().getTable( "Account" );
+        assertFalse( table.isLoaded() );
+        assertEquals( 1, table.getFailedLoads() );
+    }
+
+    @Test
+    public void testLoadTimeout() throws Exception {
+        final QueryPartnerConnection partnerConnection = createPartnerConnection();
+        final String databaseName = "load-test-" + System.nanoTime();
+        final SalesforceConnection loading = openConnection( databaseName, partnerConnection, 0 );
+        final SalesforceConnection waiting = openConnection( databaseName, partnerConnection, 1 );
+        final Table table = loading.getSchemaDef().getTable( "Account" );
+        final Future<?> load = executor.submit( () -> {
+            new TransferReader( loading ).transferData( table, table.columns );
+            return null;
+        });
+        final long end = System.currentTimeMillis() + 30000;
+        while ( partnerConnection.queries.get() == 0 && System.currentTimeMillis() < end ){
+            Thread.sleep( 10 );
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            new TransferReader( waiting ).transferData( table, table.columns );
+            fail( "The load should time out" );
+        } catch ( SQLException ex ){
+            assertTrue( ex.getMessage(), ex.getMessage().startsWith( "Timeout after 1 seconds" ));
+        }
+        assertTrue( System.currentTimeMillis() - start < 10000 );
+        partnerConnection.release.countDown();
+        load.get( 60, TimeUnit.SECONDS );
+        assertTrue( table.isFullyLoaded() );
+        assertEquals( 1, partnerConnection.queries.get() );
+    }
+
+}
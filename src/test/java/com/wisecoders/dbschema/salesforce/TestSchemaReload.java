@@ -0,0 +1,201 @@
+package com.wisecoders.dbschema.salesforce;
+
+import com.sforce.soap.partner.DescribeGlobalResult;
+import com.sforce.soap.partner.DescribeGlobalSObjectResult;
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.Field;
+import com.sforce.soap.partner.FieldType;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.wisecoders.dbschema.salesforce.schema.Schema;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Read the schema from many threads and connections while another thread runs 'reload schema'.
+ * The tables are described in batches, using describeSObjects.
+ * The readers must always see all tables with all their columns. Runs without a Salesforce account, the describe calls are answered locally.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestSchemaReload {
+
+    private static final int TABLES = 150, FIELDS = 12, CONNECTIONS = 8, READERS = 32;
+    private static final long RUN_MILLIS = 3000;
+
+    private final List<SalesforceConnection> connections = Collections.synchronizedList( new ArrayList<>() );
+
+    private static class DescribePartnerConnection extends PartnerConnection {
+
+        final AtomicInteger describeGlobalCalls = new AtomicInteger(), describeSObjectsCalls = new AtomicInteger();
+
+        DescribePartnerConnection( ConnectorConfig config ) throws ConnectionException {
+            super( config );
+        }
+
+        @Override
+        public DescribeGlobalResult describeGlobal(){
+            describeGlobalCalls.incrementAndGet();
+            final DescribeGlobalSObjectResult[] objects = new DescribeGlobalSObjectResult[ TABLES ];
+            for ( int i = 0; i < TABLES; i++ ){
+                objects[i] = new DescribeGlobalSObjectResult();
+                objects[i].setName( "Object" + i + "__c" );
+                objects[i].setLabel( "Object " + i );
+                objects[i].setQueryable( true );
+                objects[i].setCustom( true );
+            }
+            final DescribeGlobalResult result = new DescribeGlobalResult();
+            result.setSobjects( objects );
+            return result;
+        }
+
+        @Override
+        public DescribeSObjectResult[] describeSObjects( String[] names ){
+            describeSObjectsCalls.incrementAndGet();
+            assertTrue( names.length <= 100 );
+            final DescribeSObjectResult[] results = new DescribeSObjectResult[ names.length ];
+            for ( int i = 0; i < names.length; i++ ){
+                results[i] = describeSObject( names[i] );
+            }
+            return results;
+        }
+
+        @Override
+        public DescribeSObjectResult describeSObject( String name ){
+            final Field[] fields = new Field[ FIELDS ];
+            for ( int i = 0; i < FIELDS; i++ ){
+                fields[i] = new Field();
+                fields[i].setName( i == 0 ? "Id" : i == 1 ? "Parent__c" : "Field" + i + "__c" );
+                fields[i].setType( i == 0 ? FieldType.id : i == 1 ? FieldType.reference : FieldType.string );
+                fields[i].setLength( 80 );
+                fields[i].setNillable( i > 0 );
+                fields[i].setFilterable( true );
+                if ( i == 1 ) fields[i].setReferenceTo( new String[]{ "Object0__c" } );
+            }
+            final DescribeSObjectResult result = new DescribeSObjectResult();
+            result.setName( name );
+            result.setFields( fields );
+            return result;
+        }
+    }
+
+    @After
+    public void closeConnections() throws SQLException {
+        for ( SalesforceConnection connection : connections ){
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testReadsDuringReload() throws Exception {
+        final ConnectorConfig config = new ConnectorConfig();
+        config.setManualLogin( true );
+        config.setSessionId( "describe-session" );
+        config.setServiceEndpoint( "http://127.0.0.1:1/services/Soap/u/61.0/00D000000000001" );
+        final DescribePartnerConnection partnerConnection = new DescribePartnerConnection( config );
+        final String databaseName = "schema-reload-test-" + System.nanoTime();
+        final Map<String,String> parameters = new HashMap<>();
+        parameters.put( "cache", "memory" );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( READERS + 1 );
+        final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        try {
+            // THE CONNECTIONS ARE OPENED AT THE SAME TIME AND MUST SHARE ONE SCHEMA, DESCRIBED ONCE
+            final CountDownLatch start = new CountDownLatch( 1 );
+            final List<Future<SalesforceConnection>> opened = new ArrayList<>();
+            for ( int i = 0; i < CONNECTIONS; i++ ){
+                opened.add( executor.submit( () -> {
+                    start.await();
+                    final SalesforceConnection connection = new SalesforceConnection( databaseName, partnerConnection, parameters );
+                    connections.add( connection );
+                    connection.ensureColumnsAreLoaded();
+                    return connection;
+                }));
+            }
+            start.countDown();
+            final Schema schema = opened.get(0).get().getSchemaDef();
+            for ( Future<SalesforceConnection> future : opened ){
+                assertSame( schema, future.get().getSchemaDef() );
+            }
+            assertEquals( 1, partnerConnection.describeGlobalCalls.get() );
+            // THE TABLES ARE DESCRIBED IN BATCHES OF 100
+            assertEquals( ( TABLES + 99 ) / 100, partnerConnection.describeSObjectsCalls.get() );
+            assertEquals( TABLES, schema.getTables().size() );
+
+            final long end = System.currentTimeMillis() + RUN_MILLIS;
+            final AtomicInteger reloads = new AtomicInteger(), reads = new AtomicInteger();
+            final List<Future<?>> futures = new ArrayList<>();
+            futures.add( executor.submit( () -> {
+                try ( Statement st = connections.get(0).createStatement() ){
+                    while ( System.currentTimeMillis() < end ){
+                        st.execute( "reload schema " );
+                        reloads.incrementAndGet();
+                    }
+                } catch ( Throwable ex ){
+                    errors.add( ex );
+                }
+            }));
+            for ( int i = 0; i < READERS; i++ ){
+                final SalesforceConnection connection = connections.get( i % CONNECTIONS );
+                futures.add( executor.submit( () -> {
+                    try {
+                        final DatabaseMetaData metaData = connection.getMetaData();
+                        while ( System.currentTimeMillis() < end ){
+                            assertEquals( TABLES, countRows( metaData.getTables( null, null, null, null )));
+                            assertEquals( FIELDS, countRows( metaData.getColumns( null, null, "Object7__c", null )));
+                            assertEquals( TABLES, countRows( metaData.getImportedKeys( null, null, null )));
+                            final Table table = connection.getSchemaDef().getTable( "Object42__c" );
+                            assertNotNull( table );
+                            assertEquals( FIELDS, table.columns.size() );
+                            assertEquals( table.name, connection.getSchemaDef().getTableIgnoreCase( "OBJECT42__C" ).name );
+                            reads.incrementAndGet();
+                        }
+                    } catch ( Throwable ex ){
+                        errors.add( ex );
+                    }
+                }));
+            }
+            for ( Future<?> future : futures ){
+                future.get( RUN_MILLIS + 60000, TimeUnit.MILLISECONDS );
+            }
+            if ( !errors.isEmpty() ){
+                throw new AssertionError( errors.size() + " errors, the first one: " + errors.peek(), errors.peek() );
+            }
+            assertTrue( reloads.get() > 1 );
+            assertTrue( reads.get() > READERS );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int countRows( ResultSet rs ) throws SQLException {
+        int rows = 0;
+        while ( rs.next() ){
+            rows++;
+        }
+        return rows;
+    }
+
+}
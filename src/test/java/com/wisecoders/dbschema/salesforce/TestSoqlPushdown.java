@@ -0,0 +1,326 @@
+package com.wisecoders.dbschema.salesforce;
+
+import com.wisecoders.dbschema.salesforce.schema.Column;
+import com.wisecoders.dbschema.salesforce.schema.Schema;
+import com.wisecoders.dbschema.salesforce.schema.ShowTables;
+import com.wisecoders.dbschema.salesforce.schema.Table;
+import com.wisecoders.dbschema.salesforce.sql.SelectStatement;
+import com.wisecoders.dbschema.salesforce.sql.SoqlQuery;
+import com.wisecoders.dbschema.salesforce.sql.SqlParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Translate SQL statements to SOQL. The pushed conditions have to select at least the rows H2 selects,
+ * and the LIMIT queries answered from Salesforce exactly these rows. Runs without a Salesforce account.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestSoqlPushdown {
+
+    private Table table;
+
+    @Before
+    public void createTable(){
+        table = new Table( "Opportunity", true, null );
+        table.createColumn( "Id", "id", 18, 0, 0, false, false, null );
+        table.createColumn( "Name", "string", 120, 0, 0, true, false, null );
+        table.createColumn( "Amount", "currency", 0, 18, 2, true, false, null );
+        table.createColumn( "CloseDate", "date", 0, 0, 0, true, false, null );
+        table.createColumn( "CreatedDate", "datetime", 0, 0, 0, true, false, null );
+        table.createColumn( "IsClosed", "boolean", 0, 0, 0, false, false, null );
+        table.createColumn( "StageName", "picklist", 40, 0, 0, true, false, null );
+    }
+
+    private String getLimitedSoql( String sql ){
+        final SelectStatement statement = SqlParser.parseSelect( sql );
+        assertNotNull( sql, statement );
+        return statement.getLimitedSoql( table );
+    }
+
+    private String getConditions( String sql ){
+        return String.join( " AND ", SqlParser.parseSelect( sql ).getSoqlConditions( table ));
+    }
+
+    /**
+     * Statements with the SOQL conditions pushed down, joined by AND.
+     */
+    private static final String[][] PARSED_STATEMENTS = {
+            { "select Id from Opportunity", "" },
+            { "select Id from Opportunity;", "" },
+            { "select o.Id from Opportunity o where o.Amount = 100", "Amount = 100" },
+            { "select Id from Opportunity as o where Opportunity.Amount = 100", "Amount = 100" },
+            { "select Id from sales.Opportunity where Amount = 100", "Amount = 100" },
+            { "select \"Id\" from \"Opportunity\" where \"Name\" = 'O''Brien'", "Name = 'O\\'Brien'" },
+            { "select Id from Opportunity where 100 < Amount", "Amount > 100" },
+            { "select Id from Opportunity where Amount between 1 and 5", "Amount >= 1 AND Amount <= 5" },
+            { "select Id from Opportunity -- comment\n where /* comment */ Amount = -5", "Amount = -5" },
+            { "select Id from Opportunity where Amount = 1.5e2", "Amount = 150" },
+            { "select Id from Opportunity where CloseDate = date '2024-01-31'", "CloseDate = 2024-01-31" },
+            { "select Id from Opportunity where IsClosed", "IsClosed = true" },
+            { "select Id from Opportunity where IsClosed = false", "IsClosed = false" },
+            { "select Id from Opportunity where IsClosed is not true", "IsClosed = false" },
+            { "select Id from Opportunity where Name is null", "Name = null" },
+            { "select Id from Opportunity where Name is not null", "Name != null" },
+            { "select Id from Opportunity where upper(Name) = 'A' and Amount = 1", "Amount = 1" },
+            { "select Id from Opportunity where Amount = ? and CloseDate = '2024-01-31'", "CloseDate = 2024-01-31" },
+            { "select Id from Opportunity where Other = 1", "" },
+            { "select Id from Opportunity where case when Amount > 1 then 1 else 0 end = 1 and Amount = 2", "Amount = 2" },
+            { "select Id from Opportunity where Amount = 1 order by Name desc nulls last limit 10 offset 5", "Amount = 1" },
+            { "select Id from Opportunity where Amount = 1 fetch first 10 rows only", "Amount = 1" },
+    };
+
+    /**
+     * Statements not parsed, executed only in H2.
+     */
+    private static final String[] UNPARSED_STATEMENTS = {
+            "update Opportunity set Amount = 1",
+            "select Id from Opportunity union select Id from Opportunity",
+            "select Id from Opportunity where Id in (select Id from Opportunity)",
+            "with o as (select Id from Opportunity) select Id from o",
+            "select Id from Opportunity o right join Account a on o.AccountId = a.Id",
+            "select Id from Opportunity o join Account a on o.AccountId = a.Id or a.Id is null",
+            "select Id from Opportunity o, Account a",
+            "select Id from Opportunity for update",
+    };
+
+    /**
+     * WHERE clauses and their SOQL. The SOQL has to select at least the rows H2 selects, so conditions are dropped
+     * when SOQL could lose rows: string ranges and NOT IN are case-insensitive, LIKE is pushed only with a prefix,
+     * OR needs all operands and NOT is pushed only for boolean columns and IN.
+     */
+    private static final String[][] SUPERSET_CONDITIONS = {
+            { "Amount in (1, 2)", "Amount IN (1, 2)" },
+            { "Name in ('a', 'b')", "Name IN ('a', 'b')" },
+            { "Amount in (1, 'x')", "" },
+            { "Amount not in (1, 2)", "Amount NOT IN (1, 2)" },
+            { "Name not in ('a')", "" },
+            { "Name like 'Acme%'", "Name LIKE 'Acme%'" },
+            { "Name like '%Acme'", "" },
+            { "Name like 'Ac_me%'", "" },
+            { "Name like 'Ac%me%'", "" },
+            { "Name like 'Acme'", "" },
+            { "Name like '%'", "" },
+            { "Name like 'A\\%' escape '\\'", "" },
+            { "Name not like 'Acme%'", "" },
+            { "Amount like '1%'", "" },
+            { "Name > 'A'", "" },
+            { "Name != 'A'", "" },
+            { "Amount = 1 or Amount = 2", "(Amount = 1 OR Amount = 2)" },
+            { "Amount = 1 or upper(Name) = 'A'", "" },
+            { "Amount = 1 or Other = 2", "" },
+            { "(Amount = 1 and upper(Name) = 'A') or Amount = 2", "((Amount = 1) OR Amount = 2)" },
+            { "(Amount = 1 and CloseDate = '2024-01-31') or Amount = 2", "((Amount = 1 AND CloseDate = 2024-01-31) OR Amount = 2)" },
+            { "Amount = 1 and (Amount = 2 or Name like '%A')", "Amount = 1" },
+            { "not IsClosed", "IsClosed = false" },
+            { "not not IsClosed", "IsClosed = true" },
+            { "not (Amount = 1)", "" },
+            { "not Amount = 1", "" },
+            { "not (Amount = 1 or Amount = 2) and Amount = 3", "Amount = 3" },
+            { "Amount not between 1 and 5", "" },
+            { "Name is not null and not (Name like 'A%')", "Name != null" },
+    };
+
+    @Test
+    public void testParser(){
+        for ( String[] statement : PARSED_STATEMENTS ){
+            assertNotNull( statement[0], SqlParser.parseSelect( statement[0] ));
+            assertEquals( statement[0], statement[1], getConditions( statement[0] ));
+        }
+        for ( String sql : UNPARSED_STATEMENTS ){
+            assertNull( sql, SqlParser.parseSelect( sql ));
+        }
+    }
+
+    @Test
+    public void testConditionsSelectSuperset(){
+        for ( String[] condition : SUPERSET_CONDITIONS ){
+            final String sql = "select Id from Opportunity where " + condition[0];
+            assertEquals( sql, condition[1], getConditions( sql ));
+        }
+    }
+
+    /**
+     * Aggregate statements with the exact SOQL, the SOQL with SOQL semantics and the column labels. Null if not pushed down.
+     */
+    private static final String[][] AGGREGATE_STATEMENTS = {
+            { "select count(*) from Opportunity",
+                    "SELECT COUNT() FROM Opportunity", "SELECT COUNT() FROM Opportunity", "COUNT(*)" },
+            { "select count(*) as n from Opportunity where Amount > 100",
+                    "SELECT COUNT() FROM Opportunity WHERE Amount > 100", "SELECT COUNT() FROM Opportunity WHERE Amount > 100", "n" },
+            { "select count(*), count(Amount) from Opportunity",
+                    "SELECT COUNT(Id), COUNT(Amount) FROM Opportunity", "SELECT COUNT(Id), COUNT(Amount) FROM Opportunity", "COUNT(*), COUNT(Amount)" },
+            { "select min(CloseDate), max(Amount) m, count(distinct CloseDate) from Opportunity",
+                    "SELECT MIN(CloseDate), MAX(Amount), COUNT_DISTINCT(CloseDate) FROM Opportunity",
+                    "SELECT MIN(CloseDate), MAX(Amount), COUNT_DISTINCT(CloseDate) FROM Opportunity", "MIN(CloseDate), m, COUNT(DISTINCT CloseDate)" },
+            { "select StageName, count(*) from Opportunity group by StageName",
+                    "SELECT StageName, COUNT(Id) FROM Opportunity GROUP BY StageName",
+                    "SELECT StageName, COUNT(Id) FROM Opportunity GROUP BY StageName", "StageName, COUNT(*)" },
+            { "select count(*) from Opportunity group by StageName",
+                    "SELECT COUNT(Id) FROM Opportunity GROUP BY StageName", "SELECT COUNT(Id) FROM Opportunity GROUP BY StageName", "COUNT(*)" },
+            { "select o.CloseDate d, sum(o.Amount) total from Opportunity o group by CloseDate order by CloseDate desc limit 5",
+                    "SELECT CloseDate, SUM(Amount) FROM Opportunity GROUP BY CloseDate ORDER BY CloseDate DESC NULLS LAST LIMIT 5",
+                    "SELECT CloseDate, SUM(Amount) FROM Opportunity GROUP BY CloseDate ORDER BY CloseDate DESC NULLS LAST LIMIT 5", "d, total" },
+            { "select CloseDate, IsClosed, count(*) from Opportunity group by IsClosed, CloseDate",
+                    "SELECT CloseDate, IsClosed, COUNT(Id) FROM Opportunity GROUP BY IsClosed, CloseDate",
+                    "SELECT CloseDate, IsClosed, COUNT(Id) FROM Opportunity GROUP BY IsClosed, CloseDate", "CloseDate, IsClosed, COUNT(*)" },
+            // TEXT IS GROUPED, SORTED AND COMPARED CASE-INSENSITIVE IN SOQL
+            { "select Name, count(*) from Opportunity group by Name",
+                    null, "SELECT Name, COUNT(Id) FROM Opportunity GROUP BY Name", "Name, COUNT(*)" },
+            { "select max(Name), count(distinct Name) from Opportunity",
+                    null, "SELECT MAX(Name), COUNT_DISTINCT(Name) FROM Opportunity", "MAX(Name), COUNT(DISTINCT Name)" },
+            { "select count(*) from Opportunity where Name = 'A'",
+                    null, "SELECT COUNT() FROM Opportunity WHERE Name = 'A'", "COUNT(*)" },
+            { "select StageName, count(*) from Opportunity group by StageName order by StageName",
+                    null, "SELECT StageName, COUNT(Id) FROM Opportunity GROUP BY StageName ORDER BY StageName ASC NULLS FIRST", "StageName, COUNT(*)" },
+            // NOT WRITTEN IN SOQL
+            { "select sum(Name) from Opportunity", null, null, null },
+            { "select Amount, count(*) from Opportunity group by CloseDate", null, null, null },
+            { "select count(*) from Opportunity group by CloseDate order by Amount", null, null, null },
+            { "select CloseDate, count(*) from Opportunity group by CloseDate having count(*) > 1", null, null, null },
+            { "select count(*) from Opportunity where upper(Name) = 'A'", null, null, null },
+            { "select count(*) + 1 from Opportunity", null, null, null },
+            { "select count(*) from Opportunity offset 5", null, null, null },
+            { "select count(Other) from Opportunity", null, null, null },
+    };
+
+    private static String getLabels( SoqlQuery query ){
+        final StringBuilder sb = new StringBuilder();
+        for ( SoqlQuery.Field field : query.fields ){
+            if ( sb.length() > 0 ) sb.append(", ");
+            sb.append( field.label );
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testAggregateQuery(){
+        for ( String[] statement : AGGREGATE_STATEMENTS ){
+            final SelectStatement parsed = SqlParser.parseSelect( statement[0] );
+            assertNotNull( statement[0], parsed );
+            final SoqlQuery exactQuery = parsed.getAggregateQuery( table, true );
+            assertEquals( statement[0], statement[1], exactQuery != null ? exactQuery.soql : null );
+            final SoqlQuery query = parsed.getAggregateQuery( table, false );
+            assertEquals( statement[0], statement[2], query != null ? query.soql : null );
+            if ( query != null ){
+                assertTrue( statement[0], parsed.isAggregate() );
+                assertEquals( statement[0], statement[3], getLabels( query ));
+                assertEquals( statement[0], query.soql.startsWith( "SELECT COUNT() " ), query.countOnly );
+            }
+        }
+    }
+
+    /**
+     * Join statements with the exact SOQL, the SOQL with SOQL semantics and the column labels. Null if not pushed down.
+     * Opportunity references Account by AccountId, Account references User by OwnerId. PartnerId is polymorphic.
+     */
+    private static final String[][] JOIN_STATEMENTS = {
+            { "select o.Name, a.Name from Opportunity o join Account a on o.AccountId = a.Id",
+                    "SELECT Name, Account.Name FROM Opportunity WHERE AccountId != null",
+                    "SELECT Name, Account.Name FROM Opportunity WHERE AccountId != null", "Name, Name" },
+            { "select o.Name, a.Name as AccountName from Opportunity o left outer join Account a on a.Id = o.AccountId",
+                    "SELECT Name, Account.Name FROM Opportunity", "SELECT Name, Account.Name FROM Opportunity", "Name, AccountName" },
+            { "select Opportunity.Id, Account.Name from Opportunity left join Account on Opportunity.AccountId = Account.Id",
+                    "SELECT Id, Account.Name FROM Opportunity", "SELECT Id, Account.Name FROM Opportunity", "Id, Name" },
+            { "select o.Id, u.Name from Opportunity o left join Account a on o.AccountId = a.Id left join User u on a.OwnerId = u.Id",
+                    "SELECT Id, Account.Owner.Name FROM Opportunity", "SELECT Id, Account.Owner.Name FROM Opportunity", "Id, Name" },
+            { "select o.Id, u.Name from Opportunity o join Account a on o.AccountId = a.Id join User u on a.OwnerId = u.Id",
+                    "SELECT Id, Account.Owner.Name FROM Opportunity WHERE AccountId != null AND Account.OwnerId != null",
+                    "SELECT Id, Account.Owner.Name FROM Opportunity WHERE AccountId != null AND Account.OwnerId != null", "Id, Name" },
+            { "select a.Name, u.Name from Opportunity o join Account a on o.AccountId = a.Id left join User u on o.OwnerId = u.Id",
+                    "SELECT Account.Name, Owner.Name FROM Opportunity WHERE AccountId != null",
+                    "SELECT Account.Name, Owner.Name FROM Opportunity WHERE AccountId != null", "Name, Name" },
+            { "select a.* from Opportunity o join Account a on o.AccountId = a.Id",
+                    "SELECT Account.Id, Account.Name, Account.Industry, Account.AnnualRevenue, Account.OwnerId FROM Opportunity WHERE AccountId != null",
+                    "SELECT Account.Id, Account.Name, Account.Industry, Account.AnnualRevenue, Account.OwnerId FROM Opportunity WHERE AccountId != null",
+                    "Id, Name, Industry, AnnualRevenue, OwnerId" },
+            { "select Industry from Opportunity o left join Account a on o.AccountId = a.Id where AnnualRevenue > 1000 order by AnnualRevenue desc limit 10",
+                    "SELECT Account.Industry FROM Opportunity WHERE Account.AnnualRevenue > 1000 ORDER BY Account.AnnualRevenue DESC NULLS LAST LIMIT 10",
+                    "SELECT Account.Industry FROM Opportunity WHERE Account.AnnualRevenue > 1000 ORDER BY Account.AnnualRevenue DESC NULLS LAST LIMIT 10", "Industry" },
+            { "select o.Name from Opportunity o join Account a on o.AccountId = a.Id where a.Industry = 'Energy' order by o.Name",
+                    null, "SELECT Name FROM Opportunity WHERE Account.Industry = 'Energy' AND AccountId != null ORDER BY Name ASC NULLS FIRST", "Name" },
+            // NOT WRITTEN IN SOQL: AMBIGUOUS COLUMNS, POLYMORPHIC REFERENCES, JOINS NOT ON THE PARENT ID, JOINS TO CHILD TABLES
+            { "select Name from Opportunity o join Account a on o.AccountId = a.Id", null, null, null },
+            { "select a.Name from Opportunity o join Account a on o.PartnerId = a.Id", null, null, null },
+            { "select a.Name from Opportunity o join Account a on o.AccountId = a.OwnerId", null, null, null },
+            { "select a.Name from Opportunity o join Account a on o.OwnerId = a.Id", null, null, null },
+            { "select a.Name from Opportunity o join Account a on o.AccountId = a.Id join Opportunity p on p.AccountId = a.Id", null, null, null },
+            { "select a.Name from Opportunity o join Lead a on o.AccountId = a.Id", null, null, null },
+            { "select o.Name from Opportunity o join Account a on o.AccountId = a.Id where upper(a.Name) = 'A'", null, null, null },
+            { "select distinct a.Name from Opportunity o join Account a on o.AccountId = a.Id", null, null, null },
+            { "select count(*) from Opportunity o join Account a on o.AccountId = a.Id", null, null, null },
+    };
+
+    @Test
+    public void testJoinQuery(){
+        final Table account = new Table( "Account", true, null );
+        account.createColumn( "Id", "id", 18, 0, 0, false, false, null );
+        account.createColumn( "Name", "string", 255, 0, 0, true, false, null );
+        account.createColumn( "Industry", "picklist", 40, 0, 0, true, false, null );
+        account.createColumn( "AnnualRevenue", "currency", 0, 18, 0, true, false, null );
+        final Table user = new Table( "User", true, null );
+        user.createColumn( "Id", "id", 18, 0, 0, false, false, null );
+        user.createColumn( "Name", "string", 121, 0, 0, true, false, null );
+        account.createForeignKey( account.createColumn( "OwnerId", "reference", 18, 0, 0, true, false, null ), user, "Owner" );
+        table.createForeignKey( table.createColumn( "AccountId", "reference", 18, 0, 0, true, false, null ), account, "Account" );
+        table.createForeignKey( table.createColumn( "OwnerId", "reference", 18, 0, 0, true, false, null ), user, "Owner" );
+        final Column partner = table.createColumn( "PartnerId", "reference", 18, 0, 0, true, false, null );
+        table.createForeignKey( partner, account, "Partner" );
+        table.createForeignKey( partner, user, "Partner" );
+        final Schema schema = new Schema( ShowTables.all, 1 );
+        schema.addTable( table );
+        schema.addTable( account );
+        schema.addTable( user );
+
+        for ( String[] statement : JOIN_STATEMENTS ){
+            final SelectStatement parsed = SqlParser.parseSelect( statement[0] );
+            assertNotNull( statement[0], parsed );
+            final SoqlQuery exactQuery = parsed.getJoinQuery( table, schema, true );
+            assertEquals( statement[0], statement[1], exactQuery != null ? exactQuery.soql : null );
+            final SoqlQuery query = parsed.getJoinQuery( table, schema, false );
+            assertEquals( statement[0], statement[2], query != null ? query.soql : null );
+            if ( query != null ){
+                assertEquals( statement[0], statement[3], getLabels( query ));
+            }
+        }
+        final SoqlQuery query = SqlParser.parseSelect( JOIN_STATEMENTS[3][0] ).getJoinQuery( table, schema, true );
+        assertArrayEquals( new String[]{ "Account", "Owner", "Name" }, query.fields.get(1).path );
+        assertSame( user.getColumn( "Name" ), query.fields.get(1).column );
+    }
+
+    @Test
+    public void testTimestampWithoutFraction(){
+        assertEquals( "SELECT Id FROM Opportunity WHERE CreatedDate >= 2024-01-01T10:00:00Z LIMIT 10",
+                getLimitedSoql( "select Id from Opportunity where CreatedDate >= '2024-01-01T10:00:00Z' limit 10" ));
+    }
+
+    @Test
+    public void testTimestampWithFraction(){
+        // SOQL HAS NO FRACTIONAL SECONDS. THE RANGE IS WIDENED TO WHOLE SECONDS AND IS NOT EXACT ANY MORE.
+        assertEquals( "CreatedDate >= 2024-01-01T10:00:00Z", getConditions( "select Id from Opportunity where CreatedDate > '2024-01-01T10:00:00.500Z'" ));
+        assertEquals( "CreatedDate >= 2024-01-01T10:00:00Z", getConditions( "select Id from Opportunity where CreatedDate >= '2024-01-01T10:00:00.500Z'" ));
+        assertEquals( "CreatedDate < 2024-01-01T10:00:01Z", getConditions( "select Id from Opportunity where CreatedDate < '2024-01-01T10:00:00.500Z'" ));
+        assertEquals( "CreatedDate < 2024-01-01T10:00:01Z", getConditions( "select Id from Opportunity where CreatedDate <= '2024-01-01T10:00:00.500Z'" ));
+        assertEquals( "", getConditions( "select Id from Opportunity where CreatedDate = '2024-01-01T10:00:00.500Z'" ));
+        assertEquals( "", getConditions( "select Id from Opportunity where CreatedDate in ('2024-01-01T10:00:00.500Z')" ));
+        assertNull( getLimitedSoql( "select Id from Opportunity where CreatedDate > '2024-01-01T10:00:00.500Z' limit 10" ));
+    }
+
+    @Test
+    public void testNotEqualIsNotExact(){
+        // SOQL '!=' AND NOT IN RETURN ALSO THE ROWS WITH NULL VALUES, WHICH H2 SKIPS. THEY ARE PUSHED ONLY AS FILTERS.
+        assertEquals( "SELECT Id FROM Opportunity WHERE Amount = 100 LIMIT 10", getLimitedSoql( "select Id from Opportunity where Amount = 100 limit 10" ));
+        assertNull( getLimitedSoql( "select Id from Opportunity where Amount != 100 limit 10" ));
+        assertNull( getLimitedSoql( "select Id from Opportunity where Amount <> 100 limit 10" ));
+        assertNull( getLimitedSoql( "select Id from Opportunity where Amount not in (1, 2) limit 10" ));
+        assertNull( getLimitedSoql( "select Id from Opportunity where Amount = 1 or Amount != 100 limit 10" ));
+        assertEquals( "Amount != 100", getConditions( "select Id from Opportunity where Amount <> 100" ));
+        assertEquals( "Amount NOT IN (1, 2)", getConditions( "select Id from Opportunity where Amount not in (1, 2)" ));
+        assertNull( SqlParser.parseSelect( "select count(*) from Opportunity where Amount != 100" ).getAggregateQuery( table, true ));
+        assertNotNull( SqlParser.parseSelect( "select count(*) from Opportunity where Amount = 100" ).getAggregateQuery( table, true ));
+    }
+
+}
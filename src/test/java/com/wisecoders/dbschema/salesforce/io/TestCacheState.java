@@ -0,0 +1,59 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Save and restore the loaded filters of the cached tables. Runs without a Salesforce account.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestCacheState {
+
+    private static Set<String> filter( String... conditions ){
+        return conditions.length == 0 ? Collections.emptySet() : new LinkedHashSet<>( Arrays.asList( conditions ));
+    }
+
+    @Test
+    public void testEncodeFilters(){
+        assertEquals( "", CacheState.encodeFilters( Collections.singletonList( filter() )));
+        assertEquals( "Amount > 10\tName = 'A'", CacheState.encodeFilters( Collections.singletonList( filter( "Amount > 10", "Name = 'A'" ))));
+        assertEquals( "Amount > 10\nAmount < 5", CacheState.encodeFilters( Arrays.asList( filter( "Amount > 10" ), filter( "Amount < 5" ))));
+        assertEquals( "Name = 'a\\\\nb'\tName = 'a\\nb\\tc'", CacheState.encodeFilters( Collections.singletonList( filter( "Name = 'a\\nb'", "Name = 'a\nb\tc'" ))));
+    }
+
+    @Test
+    public void testDecodeFilters(){
+        // STATES SAVED WITHOUT FILTERS HAVE ALL ROWS LOADED
+        assertEquals( Collections.singletonList( filter() ), CacheState.decodeFilters( null ));
+        assertEquals( Collections.singletonList( filter() ), CacheState.decodeFilters( "" ));
+        // A BACKSLASH AT THE END IS KEPT
+        assertEquals( Collections.singletonList( filter( "Name = '\\" )), CacheState.decodeFilters( "Name = '\\" ));
+    }
+
+    @Test
+    public void testRoundTrip(){
+        final List<List<Set<String>>> values = Arrays.asList(
+                Collections.singletonList( filter() ),
+                Collections.singletonList( filter( "Amount > 10" )),
+                Arrays.asList( filter( "Amount > 10", "CloseDate = 2024-01-31" ), filter( "Amount < 5" )),
+                Arrays.asList( filter( "Name = 'two\nlines'" ), filter( "Name = 'tab\there'", "Name = 'back\\slash'" ), filter( "Name = '\\n'" )),
+                Collections.singletonList( filter( "WhatId IN (SELECT Id FROM Account WHERE Industry = 'Energy')" )),
+                Collections.singletonList( filter( "Name = ''" ))
+        );
+        for ( List<Set<String>> filters : values ){
+            final String encoded = CacheState.encodeFilters( filters );
+            assertEquals( encoded, filters, CacheState.decodeFilters( encoded ));
+            // ONE LINE PER FILTER
+            assertEquals( encoded, filters.size(), encoded.split("\n", -1 ).length );
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Read the CSV results of Bulk API query jobs. Runs without a Salesforce account.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestCsvReader {
+
+    private static List<List<String>> read( String csv ) throws IOException {
+        final BulkQueryReader.CsvReader reader = new BulkQueryReader.CsvReader( new StringReader( csv ));
+        final List<List<String>> records = new ArrayList<>();
+        List<String> record;
+        while (( record = reader.readRecord()) != null ){
+            records.add( record );
+        }
+        return records;
+    }
+
+    @Test
+    public void testRecords() throws IOException {
+        assertEquals( Arrays.asList( Arrays.asList( "Id", "Name" ), Arrays.asList( "001", "Acme" )), read( "Id,Name\n001,Acme\n" ));
+        // THE LAST LINE BREAK IS OPTIONAL, WINDOWS LINE BREAKS ARE ACCEPTED
+        assertEquals( Arrays.asList( Arrays.asList( "Id", "Name" ), Arrays.asList( "001", "Acme" )), read( "Id,Name\r\n001,Acme" ));
+        assertTrue( read( "" ).isEmpty() );
+    }
+
+    @Test
+    public void testQuotedValues() throws IOException {
+        final String[][] values = {
+                { "\"Acme, Inc.\"", "Acme, Inc." },
+                { "\"say \"\"hello\"\"\"", "say \"hello\"" },
+                { "\"two\nlines\"", "two\nlines" },
+                { "\"two\r\nlines\"", "two\r\nlines" },
+                { "\"\"\"\"", "\"" },
+                { "\"a\"b", "ab" },
+        };
+        for ( String[] value : values ){
+            assertEquals( value[0], Arrays.asList( Arrays.asList( "1", value[1], "2" )), read( "1," + value[0] + ",2\n" ));
+        }
+    }
+
+    @Test
+    public void testNullValues() throws IOException {
+        // SALESFORCE WRITES NULL AS AN EMPTY VALUE. AN EMPTY STRING CANNOT BE TOLD APART, BOTH ARE READ AS NULL.
+        assertEquals( Arrays.asList( Arrays.asList( null, "a", null, null )), read( ",a,,\n" ));
+        assertEquals( Arrays.asList( Arrays.asList( "a", null, "b" )), read( "a,\"\",b\n" ));
+        assertEquals( Arrays.asList( Arrays.asList( "a" ), Arrays.asList( (String)null ), Arrays.asList( "b" )), read( "a\n\nb\n" ));
+        assertEquals( Arrays.asList( Arrays.asList( " ", null )), read( " ,\n" ));
+    }
+
+    @Test
+    public void testLongValues() throws IOException {
+        // VALUES LONGER THAN THE READ BUFFER
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < 100000; i++ ) sb.append( (char)( 'a' + i % 26 ));
+        final String value = sb.toString();
+        assertEquals( Arrays.asList( Arrays.asList( value, value ), Arrays.asList( "x", null )),
+                read( value + ",\"" + value + "\"\nx,\n" ));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnterminatedQuote() throws IOException {
+        read( "a,\"b\n" );
+    }
+}
@@ -0,0 +1,55 @@
+package com.wisecoders.dbschema.salesforce.io;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Split the Salesforce Ids into ranges for loading a table in chunks. Runs without a Salesforce account.
+ *
+ * Licensed under <a href="https://creativecommons.org/licenses/by-nd/4.0/">CC BY-ND 4.0 DEED</a>, copyright <a href="https://wisecoders.com">Wise Coders GmbH</a>, used by <a href="https://dbschema.com">DbSchema Database Designer</a>.
+ * Code modifications allowed only as pull requests to the <a href="https://github.com/wise-coders/salesforce-jdbc-driver">public GIT repository</a>.
+ */
+public class TestIdRanges {
+
+    @Test
+    public void testEighteenCharId(){
+        assertEquals( "001000000000001AAA", IdRanges.toEighteenCharId( "001000000000001" ));
+        assertEquals( "00D000000000062EAA", IdRanges.toEighteenCharId( "00D000000000062" ));
+        assertEquals( "00100000000000VAAQ", IdRanges.toEighteenCharId( "00100000000000V" ));
+        assertEquals( "0015000000VALDtAAP", IdRanges.toEighteenCharId( "0015000000VALDt" ));
+        assertEquals( "ABCDEFGHIJKLMNO555", IdRanges.toEighteenCharId( "ABCDEFGHIJKLMNO" ));
+    }
+
+    @Test
+    public void testBounds(){
+        // THE CHARACTERS AFTER THE COMMON PREFIX ARE BASE-62 NUMBERS, '10' IS 62 AND THE MIDDLE IS 31, 'V'
+        assertEquals( Arrays.asList( "00100000000000VAAQ" ), IdRanges.getBounds( "001000000000000", "001000000000010", 2 ));
+        assertEquals( Arrays.asList( "00100000000000FAAQ", "00100000000000VAAQ", "00100000000000kAAA" ),
+                IdRanges.getBounds( "001000000000000", "001000000000010", 4 ));
+        // EQUAL IDS CANNOT BE SPLIT
+        assertTrue( IdRanges.getBounds( "001000000000000", "001000000000000", 4 ).isEmpty() );
+        // A NARROW INTERVAL GIVES LESS RANGES, THE BOUNDS ARE NOT REPEATED
+        assertEquals( Arrays.asList( "00100000000000AAAQ" ), IdRanges.getBounds( "00100000000000A", "00100000000000B", 4 ));
+    }
+
+    @Test
+    public void testBoundsAreOrdered(){
+        final String minId = "0015000000VALDt", maxId = "001Hs00002zZkqW";
+        final List<String> bounds = IdRanges.getBounds( minId, maxId, 16 );
+        assertEquals( 15, bounds.size() );
+        String previous = minId;
+        for ( String bound : bounds ){
+            assertEquals( 18, bound.length() );
+            assertTrue( bound.startsWith( "001" ));
+            // THE ID CHARACTERS 0-9, A-Z, a-z ARE ORDERED LIKE THE JAVA STRINGS
+            assertTrue( bound + " after " + previous, bound.substring( 0, 15 ).compareTo( previous ) > 0 );
+            assertEquals( IdRanges.toEighteenCharId( bound.substring( 0, 15 )), bound );
+            previous = bound.substring( 0, 15 );
+        }
+        assertTrue( previous.compareTo( maxId ) < 0 );
+    }
+}